@@ -13,6 +13,7 @@ plugins {
 	id("com.github.breadmoirai.github-release") version "2.4.1"
 	id("org.ajoberstar.grgit") version "5.2.1"
 	id("me.modmuss50.mod-publish-plugin") version "0.3.3"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 val grgit: Grgit? = project.grgit
@@ -219,6 +220,44 @@ dependencies {
 	modLocalRuntime("maven.modrinth:jade:${properties["jade_version"]}")
 }
 
+///////////
+// TESTS //
+///////////
+
+// plain JUnit tests in src/test, for code that doesn't need a running game
+sourceSets.named("test") {
+	compileClasspath += sourceSets["client"].compileClasspath + sourceSets["client"].output
+	runtimeClasspath += sourceSets["client"].runtimeClasspath + sourceSets["client"].output
+}
+
+dependencies {
+	testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+	useJUnitPlatform()
+}
+
+////////////////
+// BENCHMARKS //
+////////////////
+
+// storage benchmarks in src/jmh; run with `gradlew jmh`, optionally filtering with -PjmhIncludes=<regex>
+sourceSets.named("jmh") {
+	compileClasspath += sourceSets["client"].compileClasspath + sourceSets["client"].output
+	runtimeClasspath += sourceSets["client"].runtimeClasspath + sourceSets["client"].output
+}
+
+jmh {
+	jmhVersion.set("1.37")
+	properties["jmhIncludes"]?.let { includes.add(it.toString()) }
+	// allocation rate
+	profilers.add("gc")
+	resultFormat.set("JSON")
+	jvmArgsAppend.add("-Xmx4G")
+}
+
 tasks.withType<ProcessResources>().configureEach {
 	filesMatching("fabric.mod.json") {
 		expand(mapOf("version" to version))
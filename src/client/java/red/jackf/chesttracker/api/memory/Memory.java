@@ -2,6 +2,7 @@ package red.jackf.chesttracker.api.memory;
 
 import com.google.common.collect.ImmutableList;
 import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -14,7 +15,10 @@ import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.api.providers.MemoryBuilder;
+import red.jackf.chesttracker.impl.memory.CompactStacks;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
 import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.StackInterner;
 import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
 import red.jackf.chesttracker.impl.util.Misc;
 import red.jackf.chesttracker.impl.util.ModCodecs;
@@ -23,6 +27,8 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 
 /**
  * <p>List of items and other details for a location. Obtained from memory keys in {@link MemoryBank}.</p>
@@ -34,40 +40,54 @@ public final class Memory {
     public static final long UNKNOWN_WORLD_TIMESTAMP = -437821L;
     public static final long UNKNOWN_LOADED_TIMESTAMP = -437822L;
 
-    public static final Codec<Memory> CODEC = RecordCodecBuilder.create(instance ->
-            instance.group(
-                            ItemStack.CODEC.listOf().fieldOf("items")
-                                    .forGetter(Memory::items),
-                            ComponentSerialization.CODEC.optionalFieldOf("name")
-                                                  .forGetter(m -> Optional.ofNullable(m.name)),
-                            ModCodecs.BLOCK_POS_STRING.listOf().optionalFieldOf("otherPositions", Collections.emptyList())
-                                    .forGetter(Memory::otherPositions),
-                            BuiltInRegistries.BLOCK.byNameCodec().optionalFieldOf("container")
-                                                   .forGetter(Memory::container),
-                            Codec.LONG.optionalFieldOf("loadedTimestamp", UNKNOWN_LOADED_TIMESTAMP)
-                                    .forGetter(Memory::loadedTimestamp),
-                            Codec.LONG.optionalFieldOf("worldTimestamp", UNKNOWN_WORLD_TIMESTAMP)
-                                    .forGetter(Memory::inGameTimestamp),
-                            ExtraCodecs.INSTANT_ISO8601.optionalFieldOf("realTimestamp", UNKNOWN_REAL_TIMESTAMP)
-                                    .forGetter(Memory::realTimestamp)
-                    ).apply(instance, (items, name, otherPositions, container, loadedTimestamp, worldTimestamp, realTimestamp) -> new Memory(
-                            items,
-                            name.orElse(null),
-                            otherPositions,
-                            container,
-                            loadedTimestamp,
-                            worldTimestamp,
-                            realTimestamp
-                    )));
-
-
-    private final List<ItemStack> items;
+    public static final Codec<Memory> CODEC = codec(ItemStack.CODEC.listOf().fieldOf("items"));
+
+    /**
+     * Creates a codec for memories, with a given codec for the memory's items. Used internally for palette-encoded
+     * storage.
+     *
+     * @param itemsCodec Codec to encode and decode this memory's items with.
+     * @return A codec for memories using the given items codec.
+     */
+    @ApiStatus.Internal
+    public static Codec<Memory> codec(MapCodec<List<ItemStack>> itemsCodec) {
+        return RecordCodecBuilder.create(instance ->
+                instance.group(
+                                itemsCodec.forGetter(Memory::items),
+                                ComponentSerialization.CODEC.optionalFieldOf("name")
+                                                      .forGetter(m -> Optional.ofNullable(m.name)),
+                                ModCodecs.BLOCK_POS_STRING.listOf().optionalFieldOf("otherPositions", Collections.emptyList())
+                                        .forGetter(Memory::otherPositions),
+                                BuiltInRegistries.BLOCK.byNameCodec().optionalFieldOf("container")
+                                                       .forGetter(Memory::container),
+                                Codec.LONG.optionalFieldOf("loadedTimestamp", UNKNOWN_LOADED_TIMESTAMP)
+                                        .forGetter(Memory::loadedTimestamp),
+                                Codec.LONG.optionalFieldOf("worldTimestamp", UNKNOWN_WORLD_TIMESTAMP)
+                                        .forGetter(Memory::inGameTimestamp),
+                                ExtraCodecs.INSTANT_ISO8601.optionalFieldOf("realTimestamp", UNKNOWN_REAL_TIMESTAMP)
+                                        .forGetter(Memory::realTimestamp)
+                        ).apply(instance, (items, name, otherPositions, container, loadedTimestamp, worldTimestamp, realTimestamp) -> new Memory(
+                                items,
+                                name.orElse(null),
+                                otherPositions,
+                                container,
+                                loadedTimestamp,
+                                worldTimestamp,
+                                realTimestamp
+                        )));
+    }
+
+    // items are kept as shared prototypes and counts, and only turned into full stacks when read
+    private volatile CompactStacks items;
+    private @Nullable Supplier<List<ItemStack>> itemLoader = null;
+    private final boolean empty;
     private final @Nullable Component name;
     private final List<BlockPos> otherPositions;
-    private final Optional<Block> container;
-    private Long loadedTimestamp;
-    private Long inGameTimestamp;
-    private Instant realTimestamp;
+    private final @Nullable Block container;
+    private long loadedTimestamp;
+    private long inGameTimestamp;
+    private long realTimestampSeconds;
+    private int realTimestampNanos;
 
     /**
      * Whether this memory contains no items. Used internally to check if it should be removed.
@@ -75,19 +95,77 @@ public final class Memory {
      * @return Whether this memory contains no items.
      */
     public boolean isEmpty() {
-        return items.isEmpty();
+        return empty;
     }
 
     /**
      * A list of items contained by this memory. Does not include any {@link ItemStack#EMPTY} stacks, so slot information
      * is not preserved.
      *
-     * @return A list of items contained in this memory.
+     * @return An immutable list of items contained in this memory. Each call to {@link List#get(int)} creates a new copy
+     * of the stored stack, so they can be freely modified. For read-only uses, {@link #forEachItem(ObjIntConsumer)}
+     * avoids these copies.
      */
     public List<ItemStack> items() {
+        return stacks();
+    }
+
+    /**
+     * Runs an action on each item in this memory without copying it, for read-only uses such as rendering or searching.
+     *
+     * @param action Action taking each item with a count of 1, and its actual count. Items may be shared with other
+     *               memories, so must not be modified or kept; use {@link #items()} for stacks that can be.
+     */
+    public void forEachItem(ObjIntConsumer<ItemStack> action) {
+        CompactStacks stacks = stacks();
+        for (int i = 0; i < stacks.size(); i++) action.accept(stacks.prototype(i), stacks.count(i));
+    }
+
+    /**
+     * Returns this memory's items in their stored form, for internal code that doesn't need copies of each stack.
+     *
+     * @return This memory's items as shared prototypes and counts.
+     */
+    @ApiStatus.Internal
+    public CompactStacks stacks() {
+        CompactStacks items = this.items;
+        if (items == null) {
+            synchronized (this) {
+                if (this.items == null) {
+                    //noinspection DataFlowIssue
+                    CompactStacks loaded = CompactStacks.copyOf(this.itemLoader.get());
+                    MemoryBankImpl bank = this.memoryKey != null ? this.memoryKey.getMemoryBank() : null;
+                    this.items = bank != null ? bank.getStackInterner().intern(loaded) : loaded;
+                    this.itemLoader = null;
+                }
+                items = this.items;
+            }
+        }
         return items;
     }
 
+    /**
+     * Replaces this memory's items with the shared prototypes from a memory bank's pool. Items that haven't been decoded
+     * yet are interned when they are.
+     *
+     * @param interner Pool to take prototypes from.
+     */
+    @ApiStatus.Internal
+    public synchronized void internStacks(StackInterner interner) {
+        if (this.items != null) this.items = interner.intern(this.items);
+    }
+
+    /**
+     * Returns the loader for this memory's items if they have not been decoded yet. Used by storage backends to copy
+     * undecoded items straight to disk.
+     *
+     * @return This memory's item loader, or null if the items are already decoded.
+     */
+    @ApiStatus.Internal
+    public synchronized @Nullable Supplier<List<ItemStack>> pendingItems() {
+        return this.itemLoader;
+    }
+
     /**
      * <p>The display name for this memory. This is usually obtained from renaming in an anvil, but can also be manually
      * edited by the user. This method should be used if the user is seeing this name, as it considers the user-supplied
@@ -158,7 +236,7 @@ public final class Memory {
      * @return The block that this memory was contained in, or an empty optional otherwise.
      */
     public Optional<Block> container() {
-        return container;
+        return Optional.ofNullable(container);
     }
 
     /**
@@ -170,7 +248,7 @@ public final class Memory {
     public void touch(long memoryBankLoadedTime, long inGameTime) {
         this.loadedTimestamp = memoryBankLoadedTime;
         this.inGameTimestamp = inGameTime;
-        this.realTimestamp = Instant.now();
+        this.setRealTimestamp(Instant.now());
     }
 
     /**
@@ -191,7 +269,12 @@ public final class Memory {
      * @return The real life time that this memory was saved at, as calculated from {@link Instant#now()}.
      */
     public Instant realTimestamp() {
-        return realTimestamp;
+        return Instant.ofEpochSecond(realTimestampSeconds, realTimestampNanos);
+    }
+
+    private void setRealTimestamp(Instant realTimestamp) {
+        this.realTimestampSeconds = realTimestamp.getEpochSecond();
+        this.realTimestampNanos = realTimestamp.getNano();
     }
 
     @ApiStatus.Internal
@@ -207,13 +290,41 @@ public final class Memory {
             long loadedTimestamp,
             long inGameTimestamp,
             Instant realTimestamp) {
-        this.items = ImmutableList.copyOf(items);
+        this.items = CompactStacks.copyOf(items);
+        this.empty = this.items.isEmpty();
+        this.name = name;
+        this.otherPositions = ImmutableList.copyOf(otherPositions);
+        this.loadedTimestamp = loadedTimestamp;
+        this.inGameTimestamp = inGameTimestamp;
+        this.setRealTimestamp(realTimestamp);
+        this.container = container.orElse(null);
+    }
+
+    /**
+     * Creates a memory whose items are only decoded when first requested through {@link #items()}.
+     *
+     * @param itemLoader Loader for this memory's items. Called at most once, possibly off the client thread.
+     * @param empty      Whether this memory has no items, so that {@link #isEmpty()} doesn't need to decode them.
+     */
+    @ApiStatus.Internal
+    public Memory(
+            Supplier<List<ItemStack>> itemLoader,
+            boolean empty,
+            @Nullable Component name,
+            List<BlockPos> otherPositions,
+            Optional<Block> container,
+            long loadedTimestamp,
+            long inGameTimestamp,
+            Instant realTimestamp) {
+        this.items = null;
+        this.itemLoader = itemLoader;
+        this.empty = empty;
         this.name = name;
         this.otherPositions = ImmutableList.copyOf(otherPositions);
         this.loadedTimestamp = loadedTimestamp;
         this.inGameTimestamp = inGameTimestamp;
-        this.realTimestamp = realTimestamp;
-        this.container = container;
+        this.setRealTimestamp(realTimestamp);
+        this.container = container.orElse(null);
     }
 
     public void populate(MemoryKeyImpl key, BlockPos pos) {
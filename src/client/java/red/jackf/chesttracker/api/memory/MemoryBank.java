@@ -9,9 +9,11 @@ import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
 import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
 import red.jackf.chesttracker.api.providers.MemoryLocation;
 import red.jackf.chesttracker.api.providers.ProviderUtils;
+import red.jackf.chesttracker.impl.memory.MemoryBankTransactionImpl;
 import red.jackf.chesttracker.impl.util.CachedClientBlockSource;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Interface for working with a loaded memory bank.
@@ -144,4 +146,40 @@ public interface MemoryBank {
      * @param location Location in the memory key to remove.
      */
     void removeMemory(ResourceLocation keyId, BlockPos location);
+
+    /**
+     * <p>Adds and removes many memories at once. Changes made to the given transaction are applied together once
+     * <code>changes</code> returns, with each affected memory key only being looked up and marked as changed once.</p>
+     *
+     * <p>If <code>changes</code> throws an exception, nothing is applied.</p>
+     *
+     * @param changes Consumer making changes to a transaction for this memory bank.
+     * @return The changes applied to each memory key. Keys with no changes applied are not included.
+     * @implSpec The default implementation records the changes, then applies each in turn using
+     * {@link #addMemory(ResourceLocation, BlockPos, Memory)} and {@link #removeMemory(ResourceLocation, BlockPos)}.
+     * @see MemoryBankTransaction
+     */
+    default Map<ResourceLocation, MemoryBankTransaction.Changes> batch(Consumer<MemoryBankTransaction> changes) {
+        MemoryBankTransactionImpl transaction = new MemoryBankTransactionImpl();
+        changes.accept(transaction);
+
+        Map<ResourceLocation, MemoryBankTransaction.Changes> applied = new HashMap<>();
+        transaction.getOperations().forEach((keyId, operations) -> {
+            int added = 0;
+            int removed = 0;
+            for (MemoryBankTransactionImpl.Operation operation : operations) {
+                boolean existed = this.getMemory(keyId, operation.position()).isPresent();
+                if (operation.isAdd()) {
+                    this.addMemory(keyId, operation.position(), operation.memory());
+                    if (this.getMemory(keyId, operation.position()).isPresent()) added++;
+                    else if (existed) removed++;
+                } else if (existed) {
+                    this.removeMemory(keyId, operation.position());
+                    removed++;
+                }
+            }
+            if (added > 0 || removed > 0) applied.put(keyId, new MemoryBankTransaction.Changes(added, removed));
+        });
+        return applied;
+    }
 }
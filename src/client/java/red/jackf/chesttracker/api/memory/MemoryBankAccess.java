@@ -26,7 +26,8 @@ public interface MemoryBankAccess {
 
     /**
      * Load a memory bank from a given coordinate using default behavior. This will use a user's default overrides if
-     * present.
+     * present. The bank is loaded in the background, so it may not be available from {@link #getLoaded()} immediately
+     * after this returns.
      *
      * @param coordinate Coordinate to load from.
      * @return Whether loading or creating the memory bank was successful.
@@ -46,4 +47,15 @@ public interface MemoryBankAccess {
      * @return The currently loaded memory bank, or an empty optional if none loaded.
      */
     Optional<MemoryBank> getLoaded();
+
+    /**
+     * <p>Takes a read-only snapshot of the currently loaded memory bank. The snapshot doesn't change after being taken,
+     * and can be read from any thread while the live bank keeps being updated.</p>
+     *
+     * <p>Must be called on the client thread. Only memory keys changed since the last snapshot are copied, so taking
+     * snapshots often is cheap.</p>
+     *
+     * @return A snapshot of the currently loaded memory bank, or an empty optional if none loaded.
+     */
+    Optional<MemoryBankSnapshot> getSnapshot();
 }
@@ -0,0 +1,67 @@
+package red.jackf.chesttracker.api.memory;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
+import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * <p>A read-only copy of a memory bank at a single point in time, obtained from
+ * {@link MemoryBankAccess#getSnapshot()}. Unlike a {@link MemoryBank}, a snapshot doesn't change once taken and can be
+ * read from any thread, such as for exports or searching in the background.</p>
+ *
+ * <p>Memories are shared with the live memory bank. {@link Memory#renderName()} and {@link Memory#hasCustomName()}
+ * check the live bank's settings and overrides, so should only be called on the client thread;
+ * {@link Memory#savedName()} is safe to use anywhere.</p>
+ */
+public interface MemoryBankSnapshot {
+    /**
+     * @return ID of the memory bank this snapshot was taken from.
+     */
+    String getId();
+
+    /**
+     * @return IDs of all memory keys in this snapshot.
+     */
+    Set<ResourceLocation> getKeys();
+
+    /**
+     * Return the memory key associated with the given memory key ID, as it was when this snapshot was taken. Keys that
+     * weren't loaded in the memory bank are read from storage the first time they are asked for, on the calling thread.
+     *
+     * @param keyId Memory key ID to lookup.
+     * @return An optional possibly containing a matching memory key.
+     */
+    Optional<MemoryKey> getKey(ResourceLocation keyId);
+
+    /**
+     * Helper method for getting a memory from a key and position.
+     *
+     * @param keyId    Memory key to get the memory from.
+     * @param position Position to lookup within the memory key.
+     * @return A memory at the given key and position, or an empty optional if not present.
+     */
+    default Optional<Memory> getMemory(ResourceLocation keyId, BlockPos position) {
+        return getKey(keyId).flatMap(key -> key.get(position));
+    }
+
+    /**
+     * Helper method for getting a count of items in a given memory key matching a given predicate.
+     *
+     * @param keyId          Memory key to look in; if non-existent an empty list will be returned.
+     * @param predicate      Predicate to filter each memory against.
+     * @param stackMergeMode How to merge stacks in the returned list - for more details, see {@link StackMergeMode}
+     * @return A list of stacks from all memories in the given key matching the predicate, merged according to <code>stackMergeMode</code>.
+     */
+    default List<ItemStack> getCounts(ResourceLocation keyId, CountingPredicate predicate, StackMergeMode stackMergeMode) {
+        Optional<MemoryKey> key = this.getKey(keyId);
+        if (key.isEmpty()) return Collections.emptyList();
+        return key.get().getCounts(predicate, stackMergeMode);
+    }
+}
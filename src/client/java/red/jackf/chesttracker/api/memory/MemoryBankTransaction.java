@@ -0,0 +1,39 @@
+package red.jackf.chesttracker.api.memory;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>A set of changes to a memory bank, made inside {@link MemoryBank#batch(Consumer)}. Changes are recorded as they are
+ * made, and applied together once the batch returns; reading from the bank during a batch won't see them yet.</p>
+ *
+ * <p>Changes within the same memory key are applied in the order they were made.</p>
+ */
+public interface MemoryBankTransaction {
+    /**
+     * Adds or updates a memory, as with {@link MemoryBank#addMemory(ResourceLocation, BlockPos, Memory)}.
+     *
+     * @param keyId    Memory key ID that this memory should be added to.
+     * @param location Location of the memory in the given key to save at.
+     * @param memory   Memory to save.
+     */
+    void addMemory(ResourceLocation keyId, BlockPos location, Memory memory);
+
+    /**
+     * Removes a memory, as with {@link MemoryBank#removeMemory(ResourceLocation, BlockPos)}.
+     *
+     * @param keyId    Memory key ID that this memory should be removed from.
+     * @param location Location in the memory key to remove.
+     */
+    void removeMemory(ResourceLocation keyId, BlockPos location);
+
+    /**
+     * Changes applied to a single memory key by a batch.
+     *
+     * @param added   Number of memories added or updated.
+     * @param removed Number of memories removed, including existing memories removed due to filtering settings.
+     */
+    record Changes(int added, int removed) {}
+}
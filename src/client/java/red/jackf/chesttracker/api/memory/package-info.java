@@ -26,5 +26,6 @@
  * @see red.jackf.chesttracker.api.memory.MemoryBank
  * @see red.jackf.chesttracker.api.memory.MemoryKey
  * @see red.jackf.chesttracker.api.memory.Memory
+ * @see red.jackf.chesttracker.api.memory.MemoryBankTransaction
  */
 package red.jackf.chesttracker.api.memory;
\ No newline at end of file
@@ -90,8 +90,6 @@ public class DefaultProvider extends ServerProvider {
                         context.getBlockSource().pos()
                 );
 
-                connected.forEach(connectedPos -> bank.removeMemory(memoryLocation.get().memoryKey(), connectedPos));
-
                 BlockPos rootPos = connected.get(0);
 
                 Memory memory = MemoryBuilder.create(items == null ? Collections.emptyList() : items)
@@ -100,7 +98,11 @@ public class DefaultProvider extends ServerProvider {
                         .inContainer(context.getBlockSource().blockState().getBlock())
                         .build();
 
-                bank.addMemory(memoryLocation.get().memoryKey(), rootPos, memory);
+                ResourceLocation keyId = memoryLocation.get().memoryKey();
+                bank.batch(transaction -> {
+                    connected.forEach(connectedPos -> transaction.removeMemory(keyId, connectedPos));
+                    transaction.addMemory(keyId, rootPos, memory);
+                });
             }
         });
     }
@@ -18,7 +18,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.api.ChestTrackerPlugin;
+import red.jackf.chesttracker.api.ClientBlockSource;
 import red.jackf.chesttracker.api.gui.ScreenBlacklist;
+import red.jackf.chesttracker.api.providers.context.ScreenCloseContext;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
 import red.jackf.chesttracker.impl.gui.DeveloperOverlay;
 import red.jackf.chesttracker.impl.gui.invbutton.ButtonPositionMap;
@@ -139,7 +141,11 @@ public class ChestTracker implements ClientModInitializer {
                     ScreenEvents.remove(screen).register(screen1 -> {
                         if (!shouldSkipProviderForNextGuiClose) {
                             ProviderHandler.INSTANCE.getCurrentProvider().ifPresent(provider -> {
-                                provider.onScreenClose(ScreenCloseContextImpl.createFor((AbstractContainerScreen<?>) screen1));
+                                ScreenCloseContext context = ScreenCloseContextImpl.createFor((AbstractContainerScreen<?>) screen1);
+                                ClientBlockSource source = InteractionTrackerImpl.INSTANCE.getLastBlockSource().orElse(null);
+                                // queued if the memory bank is still loading; replay with the interaction at the time
+                                MemoryBankAccessImpl.INSTANCE.runWhenLoaded(() -> InteractionTrackerImpl.INSTANCE.withLastBlockSource(source,
+                                        () -> provider.onScreenClose(context)));
                             });
                             InteractionTrackerImpl.INSTANCE.clear();
                         } else {
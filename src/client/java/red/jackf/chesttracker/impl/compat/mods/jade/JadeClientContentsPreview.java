@@ -46,7 +46,7 @@ public enum JadeClientContentsPreview implements IBlockComponentProvider {
             Optional<Memory> memory = bank.getMemory(accessor.getLevel(), accessor.getPosition());
             if (memory.isEmpty()) return;
 
-            var stacks = ItemStacks.flattenStacks(memory.get().items(), true);
+            var stacks = ItemStacks.flattenMemories(List.of(memory.get()), true);
 
             int max = config.getInt(accessor.showDetails() ? JadeIds.UNIVERSAL_ITEM_STORAGE_DETAILED_AMOUNT : JadeIds.UNIVERSAL_ITEM_STORAGE_NORMAL_AMOUNT);
             int perLine = config.getInt(JadeIds.UNIVERSAL_ITEM_STORAGE_ITEMS_PER_LINE);
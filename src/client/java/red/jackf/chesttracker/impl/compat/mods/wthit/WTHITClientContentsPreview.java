@@ -10,6 +10,7 @@ import red.jackf.chesttracker.api.memory.MemoryBankAccess;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
 import red.jackf.chesttracker.impl.util.ItemStacks;
 
+import java.util.List;
 import java.util.Optional;
 
 import static net.minecraft.network.chat.Component.translatable;
@@ -31,7 +32,7 @@ public enum WTHITClientContentsPreview implements IBlockComponentProvider {
             if (memory.isEmpty()) return;
 
             // show items
-            var stacks = ItemStacks.flattenStacks(memory.get().items(), true);
+            var stacks = ItemStacks.flattenMemories(List.of(memory.get()), true);
             tooltip.setLine(ItemData.ID, new ItemListComponent(stacks, config.getInt(ItemData.CONFIG_MAX_HEIGHT)));
 
             if (Screen.hasShiftDown() && config.getBoolean(ChestTrackerWTHITPlugin.CONFIG_SHOW_TEXT)) {
@@ -8,6 +8,8 @@ import net.minecraft.util.Mth;
 import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.impl.gui.GuiConstants;
 import red.jackf.chesttracker.impl.storage.backend.Backend.Type;
+import red.jackf.chesttracker.impl.storage.DeferredWriter;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -25,6 +27,12 @@ public class ChestTrackerConfig {
                     .build())
             .build();
 
+    /**
+     * Saves the config once changes have settled, for settings changed often such as by dragging. YACL serializes the
+     * live config, which the config screen also saves directly, so this is written on the client thread.
+     */
+    public static final DeferredWriter.Store DEFERRED = DeferredWriter.Store.onClientThread(INSTANCE::save);
+
     public static void init() {
         try {
             INSTANCE.load();
@@ -110,6 +118,21 @@ public class ChestTrackerConfig {
 
         @SerialEntry(comment = "Defines the format that Memory Banks are stored between worlds/sessions. Valid values: NBT, JSON, MEMORY")
         public Type storageBackend = Type.NBT;
+
+        @SerialEntry(comment = "How often to save the current Memory Bank if it has changed, in minutes. Set to 0 to only save when pausing or leaving. Range: [0, 60]")
+        public int autosaveIntervalMinutes = 5;
+
+        @SerialEntry(comment = "Compression used for NBT files. Files already saved are read with whichever compression they were saved with. Only GZIP files can be read by older versions. Valid values: NONE, GZIP, LZ4")
+        public Compression nbtCompression = Compression.GZIP;
+
+        @SerialEntry(comment = "Compression level used if NBT compression is set to GZIP. Higher is smaller but slower. Range: [1, 9]")
+        public int gzipLevel = 6;
+
+        @SerialEntry(comment = "Approximate memory used to keep recently used Memory Banks loaded, so switching back to them is instant, in megabytes. Set to 0 to disable. Range: [0, 1024]")
+        public int bankCacheMegabytes = 64;
+
+        @SerialEntry(comment = "How many previous saves of each Memory Bank to keep, stored as changes from the save before. Only used by the NBT and JSON formats. Set to 0 to disable. Range: [0, 64]")
+        public int historyVersions = 16;
     }
 
     public static class Compatibility {
@@ -124,6 +147,11 @@ public class ChestTrackerConfig {
         this.gui.gridHeight = Mth.clamp(this.gui.gridHeight, GuiConstants.MIN_GRID_ROWS, GuiConstants.MAX_GRID_HEIGHT);
         this.gui.itemListTextScale = Mth.clamp(this.gui.itemListTextScale, -6, 0);
         this.rendering.nameRange = Mth.clamp(this.rendering.nameRange, 4, 24);
+        this.storage.autosaveIntervalMinutes = Mth.clamp(this.storage.autosaveIntervalMinutes, 0, 60);
         if (this.storage.storageBackend == null) this.storage.storageBackend = Type.NBT;
+        if (this.storage.nbtCompression == null) this.storage.nbtCompression = Compression.GZIP;
+        this.storage.gzipLevel = Mth.clamp(this.storage.gzipLevel, 1, 9);
+        this.storage.bankCacheMegabytes = Mth.clamp(this.storage.bankCacheMegabytes, 0, 1024);
+        this.storage.historyVersions = Mth.clamp(this.storage.historyVersions, 0, 64);
     }
 }
@@ -20,9 +20,12 @@ import red.jackf.chesttracker.impl.gui.invbutton.ButtonPositionMap;
 import red.jackf.chesttracker.impl.gui.invbutton.PositionExporter;
 import red.jackf.chesttracker.impl.gui.screen.MemoryBankManagerScreen;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
 import red.jackf.chesttracker.impl.storage.backend.Backend;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
 import red.jackf.chesttracker.impl.util.Constants;
 import red.jackf.chesttracker.impl.util.GuiUtil;
+import red.jackf.chesttracker.impl.util.I18n;
 import red.jackf.chesttracker.impl.util.Strings;
 import red.jackf.whereisit.client.WhereIsItConfigScreenBuilder;
 
@@ -414,9 +417,78 @@ public class ChestTrackerConfigScreenBuilder {
                                 () -> instance.instance().storage.readableJsonMemories,
                                 b -> {
                                     instance.instance().storage.readableJsonMemories = b;
+                                    MemoryBankAccessImpl.INSTANCE.getLoadedInternal().ifPresent(MemoryBankImpl::markAllDirty);
                                     MemoryBankAccessImpl.INSTANCE.save();
                                     refreshConfigScreen(parent);
                                 })
+                        .build())
+                .option(Option.<Integer>createBuilder()
+                        .name(translatable("chesttracker.config.storage.autosaveInterval"))
+                        .description(OptionDescription.of(translatable("chesttracker.config.storage.autosaveInterval.description")))
+                        .controller(opt -> IntegerSliderControllerBuilder.create(opt)
+                                .range(0, 60)
+                                .step(1)
+                                .formatValue(i -> i == 0 ? CommonComponents.OPTION_OFF : I18n.minutes(i)))
+                        .binding(
+                                instance.defaults().storage.autosaveIntervalMinutes,
+                                () -> instance.instance().storage.autosaveIntervalMinutes,
+                                i -> instance.instance().storage.autosaveIntervalMinutes = i)
+                        .build())
+                .option(Option.<Compression>createBuilder()
+                        .name(translatable("chesttracker.config.storage.nbtCompression"))
+                        .description(c -> OptionDescription.createBuilder()
+                                .text(translatable("chesttracker.config.storage.nbtCompression.description"))
+                                .text(CommonComponents.NEW_LINE)
+                                .text(literal(c.name() + ": ").withStyle(ChatFormatting.GOLD)
+                                        .append(translatable("chesttracker.config.storage.nbtCompression.description." + c.name()
+                                                .toLowerCase(Locale.ROOT))
+                                                .withStyle(ChatFormatting.WHITE)))
+                                .build())
+                        .controller(opt -> EnumControllerBuilder.create(opt)
+                                .enumClass(Compression.class))
+                        .binding(
+                                instance.defaults().storage.nbtCompression,
+                                () -> instance.instance().storage.nbtCompression,
+                                c -> {
+                                    instance.instance().storage.nbtCompression = c;
+                                    refreshConfigScreen(parent);
+                                })
+                        .build())
+                .option(Option.<Integer>createBuilder()
+                        .name(translatable("chesttracker.config.storage.gzipLevel"))
+                        .description(OptionDescription.of(translatable("chesttracker.config.storage.gzipLevel.description")))
+                        .available(instance.instance().storage.nbtCompression == Compression.GZIP)
+                        .controller(opt -> IntegerSliderControllerBuilder.create(opt)
+                                .range(1, 9)
+                                .step(1))
+                        .binding(
+                                instance.defaults().storage.gzipLevel,
+                                () -> instance.instance().storage.gzipLevel,
+                                i -> instance.instance().storage.gzipLevel = i)
+                        .build())
+                .option(Option.<Integer>createBuilder()
+                        .name(translatable("chesttracker.config.storage.bankCacheMegabytes"))
+                        .description(OptionDescription.of(translatable("chesttracker.config.storage.bankCacheMegabytes.description")))
+                        .controller(opt -> IntegerSliderControllerBuilder.create(opt)
+                                .range(0, 1024)
+                                .step(16)
+                                .formatValue(i -> i == 0 ? CommonComponents.OPTION_OFF : literal(i + " MB")))
+                        .binding(
+                                instance.defaults().storage.bankCacheMegabytes,
+                                () -> instance.instance().storage.bankCacheMegabytes,
+                                i -> instance.instance().storage.bankCacheMegabytes = i)
+                        .build())
+                .option(Option.<Integer>createBuilder()
+                        .name(translatable("chesttracker.config.storage.historyVersions"))
+                        .description(OptionDescription.of(translatable("chesttracker.config.storage.historyVersions.description")))
+                        .controller(opt -> IntegerSliderControllerBuilder.create(opt)
+                                .range(0, 64)
+                                .step(1)
+                                .formatValue(i -> i == 0 ? CommonComponents.OPTION_OFF : literal(String.valueOf(i))))
+                        .binding(
+                                instance.defaults().storage.historyVersions,
+                                () -> instance.instance().storage.historyVersions,
+                                i -> instance.instance().storage.historyVersions = i)
                         .build());
 
         return rootBuilder.build();
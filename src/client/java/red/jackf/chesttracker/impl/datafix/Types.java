@@ -10,18 +10,47 @@ import com.mojang.serialization.DataResult;
 import com.mojang.serialization.Dynamic;
 import com.mojang.serialization.DynamicOps;
 import net.minecraft.SharedConstants;
-import net.minecraft.client.Minecraft;
+import net.minecraft.util.datafix.DataFixers;
 import net.minecraft.util.datafix.fixes.References;
 
 public class Types {
     public static final DSL.TypeReference MEMORY_DATA = References.reference("chesttracker/memory_data");
     public static final DSL.TypeReference MEMORY_DATA_2_3_3 = References.reference("chesttracker/memory_data_2_3_3");
 
-    private static final String VERSION_KEY = "MinecraftDataVersion";
+    public static final String VERSION_KEY = "MinecraftDataVersion";
 
+    /**
+     * @return The data version of the running game, which all saved memory data is stamped with.
+     */
+    public static int getCurrentVersion() {
+        return SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+    }
+
+    /**
+     * Runs a piece of data through the game's data fixer, from a given version to the current one.
+     *
+     * @param type        Type reference to update as
+     * @param input       Data to update, without a version key
+     * @param fromVersion Version the data was saved at
+     * @return The updated data
+     */
+    public static <A> Dynamic<A> update(DSL.TypeReference type, Dynamic<A> input, int fromVersion) {
+        return DataFixers.getDataFixer().update(type, input, fromVersion, getCurrentVersion());
+    }
+
+    /**
+     * Wraps a codec so that encoded data is stamped with the current data version, and decoded data is run through the
+     * data fixer first if it was saved at an older version.
+     *
+     * @param type            Type reference to update as
+     * @param codec           Codec for the data at the current version
+     * @param fallbackVersion Version to assume if the data has no version stamp
+     * @return Codec which fixes data when decoding
+     */
     public static <T> Codec<T> wrapInFixer(DSL.TypeReference type, Codec<T> codec, int fallbackVersion) {
-        final DataFixer fixer = Minecraft.getInstance().getFixerUpper();
-        final int currentVersion = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        // the same fixer the client uses, but available without a client instance and from any thread
+        final DataFixer fixer = DataFixers.getDataFixer();
+        final int currentVersion = getCurrentVersion();
 
         return new Codec<>() {
             @Override
@@ -34,24 +63,37 @@ public class Types {
             public <A> DataResult<Pair<T, A>> decode(DynamicOps<A> ops, A input) {
                 int version = ops.get(input, VERSION_KEY).flatMap(ops::getNumberValue).map(Number::intValue).result()
                         .orElse(fallbackVersion);
-                Dynamic<A> stripped = new Dynamic<>(ops, ops.remove(input, VERSION_KEY));
-                Dynamic<A> fixedUpped = fixer.update(type, stripped, version, currentVersion);
+                A stripped = ops.remove(input, VERSION_KEY);
+
+                // already up to date, so skip the fixer
+                if (version >= currentVersion) return codec.decode(ops, stripped);
+
+                Dynamic<A> fixedUpped = fixer.update(type, new Dynamic<>(ops, stripped), version, currentVersion);
                 return codec.decode(fixedUpped);
             }
         };
     }
 
+    /**
+     * Memory keys from 2.4.0; items are either stored per-memory, or in a palette shared by the whole key.
+     */
     public static TypeTemplate getMemoryDataType(Schema schema) {
-        return DSL.fields(
-                "memories",
-                DSL.compoundList(
-                        DSL.constType(DSL.string()),
-                        DSL.fields(
-                                "items",
-                                DSL.list(References.ITEM_STACK.in(schema))
+        return DSL.and(
+                DSL.field(
+                        "memories",
+                        DSL.compoundList(
+                                DSL.constType(DSL.string()),
+                                DSL.optionalFields(
+                                        "items",
+                                        DSL.list(References.ITEM_STACK.in(schema))
+                                )
                         )
                 ),
-                "overrides",
+                DSL.optional(DSL.field(
+                        "palette",
+                        DSL.list(References.ITEM_STACK.in(schema))
+                )),
+                DSL.field("overrides", DSL.remainder()),
                 DSL.remainder()
         );
     }
@@ -35,7 +35,7 @@ public class DeveloperOverlay {
                     if (bank.getMetadata().getName() != null)
                         loadedStr += " (" + bank.getMetadata().getName() + ")";
                     lines.add(loadedStr);
-                    lines.add("Keys: " + bank.getKeys().size());
+                    lines.add("Keys: " + bank.getKeys().size() + " (" + bank.getLoadedKeyCount() + " loaded)");
                     lines.add("Current key: " + currentKey);
                     if (currentKey.isPresent()) {
                         Optional<MemoryKey> currentMemoryKey = bank.getKey(currentKey.get());
@@ -6,6 +6,7 @@ import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.MappingResolver;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import red.jackf.chesttracker.impl.gui.invbutton.position.ButtonPosition;
+import red.jackf.chesttracker.impl.storage.DeferredWriter;
 import red.jackf.chesttracker.impl.util.Constants;
 import red.jackf.chesttracker.impl.util.FileUtil;
 import red.jackf.jackfredlib.api.base.codecs.JFLCodecs;
@@ -28,6 +29,10 @@ public class ButtonPositionMap {
 
     private static final Map<String, ButtonPosition> datapackPositions = new HashMap<>();
     private static final Map<String, ButtonPosition> userPositions = new HashMap<>();
+    private static final DeferredWriter.Store USER_STORE = () -> {
+        Map<String, ButtonPosition> copy = Map.copyOf(userPositions);
+        return () -> FileUtil.saveToNbt(copy, USER_CODEC, USER_PATH, null);
+    };
 
     /**
      * Receive all positions defined by a datapack.
@@ -62,10 +67,10 @@ public class ButtonPositionMap {
     }
 
     /**
-     * Save the user position file.
+     * Queue a save of the user position file.
      */
     private static void saveUserPositions() {
-        FileUtil.saveToNbt(userPositions, USER_CODEC, USER_PATH, null);
+        DeferredWriter.markDirty(USER_STORE);
     }
 
     /**
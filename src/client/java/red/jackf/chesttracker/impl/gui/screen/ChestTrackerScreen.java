@@ -14,6 +14,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
+import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
 import red.jackf.chesttracker.api.providers.ProviderUtils;
 import red.jackf.chesttracker.impl.compat.Compatibility;
 import red.jackf.chesttracker.impl.compat.mods.searchables.SearchablesUtil;
@@ -24,6 +25,7 @@ import red.jackf.chesttracker.impl.gui.util.TextColours;
 import red.jackf.chesttracker.impl.gui.widget.*;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
 import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.storage.DeferredWriter;
 import red.jackf.chesttracker.impl.util.GuiUtil;
 import red.jackf.chesttracker.impl.util.ItemStacks;
 import red.jackf.chesttracker.impl.util.Misc;
@@ -212,7 +214,7 @@ public class ChestTrackerScreen extends Screen {
                 ChestTracker.LOGGER.debug("Resizing to {}w, {}h", w, h);
                 ChestTrackerConfig.INSTANCE.instance().gui.gridWidth = w;
                 ChestTrackerConfig.INSTANCE.instance().gui.gridHeight = h;
-                ChestTrackerConfig.INSTANCE.save();
+                DeferredWriter.markDirty(ChestTrackerConfig.DEFERRED);
                 rebuildWidgets();
             }));
 
@@ -290,11 +292,20 @@ public class ChestTrackerScreen extends Screen {
     private void updateItems() {
         MemoryBankAccessImpl.INSTANCE.getLoadedInternal().ifPresent(bank -> {
             int maxRange = bank.getMetadata().getSearchSettings().itemListRange;
+            StackMergeMode stackMergeMode = bank.getMetadata().getSearchSettings().stackMergeMode;
+
+            // apply max range if necessary
+            Vec3 origin = maxRange == Integer.MAX_VALUE ? null : getItemListOrigin();
+            List<ItemStack> counts;
+            if (origin != null) {
+                counts = bank.getCountsWithin(currentMemoryKey, origin, maxRange, containerFilter.filter, stackMergeMode);
+            } else if (stackMergeMode == StackMergeMode.ALL) {
+                counts = bank.getTotalCounts(currentMemoryKey, containerFilter.containers);
+            } else {
+                counts = bank.getCounts(currentMemoryKey, containerFilter.filter, stackMergeMode);
+            }
 
-            CountingPredicate predicate = getItemListFilter(maxRange);
-
-            this.items = bank.getCounts(currentMemoryKey, predicate, bank.getMetadata().getSearchSettings().stackMergeMode)
-                    .stream()
+            this.items = counts.stream()
                     .sorted(itemSort.sort)
                     .toList();
 
@@ -302,15 +313,15 @@ public class ChestTrackerScreen extends Screen {
         });
     }
 
-    private CountingPredicate getItemListFilter(int maxRange) {
-        CountingPredicate predicate = containerFilter.filter;
-
-        // apply max range if necessary
+    /**
+     * @return Position to limit the item list's range around, or null if viewing a key the player isn't in.
+     */
+    @Nullable
+    private Vec3 getItemListOrigin() {
         if (Minecraft.getInstance().player != null && Objects.equals(ProviderUtils.getPlayersCurrentKey().orElse(null), currentMemoryKey)) {
-            Vec3 origin = Minecraft.getInstance().player.getEyePosition();
-            predicate = predicate.and(CountingPredicate.within(origin, maxRange));
+            return Minecraft.getInstance().player.getEyePosition();
         }
-        return predicate;
+        return null;
     }
 
     /**
@@ -435,31 +446,33 @@ public class ChestTrackerScreen extends Screen {
     public enum ContainerFilter {
         ALL(GuiUtil.twoSprite("container_filter/all"),
                 translatable("chesttracker.gui.containerFilter.all"),
-                (pos, memory) -> true),
+                container -> true),
         CHESTS(GuiUtil.twoSprite("container_filter/chests"),
                 translatable("chesttracker.gui.containerFilter.chests"),
-                (pos, memory) -> memory.container().map(b -> b instanceof AbstractChestBlock<?>).orElse(false)),
+                container -> container.map(b -> b instanceof AbstractChestBlock<?>).orElse(false)),
         BARRELS(GuiUtil.twoSprite("container_filter/barrels"),
                 translatable("chesttracker.gui.containerFilter.barrels"),
-                (pos, memory) -> memory.container().map(b -> b instanceof BarrelBlock).orElse(false)),
+                container -> container.map(b -> b instanceof BarrelBlock).orElse(false)),
         SHULKER_BOXES(GuiUtil.twoSprite("container_filter/shulker_boxes"),
                 translatable("chesttracker.gui.containerFilter.shulkerBoxes"),
-                (pos, memory) -> memory.container().map(b -> b instanceof ShulkerBoxBlock).orElse(false)),
+                container -> container.map(b -> b instanceof ShulkerBoxBlock).orElse(false)),
         HOPPERS(GuiUtil.twoSprite("container_filter/hoppers"),
                 translatable("chesttracker.gui.containerFilter.hoppers"),
-                (pos, memory) -> memory.container().map(b -> b instanceof HopperBlock).orElse(false)),
+                container -> container.map(b -> b instanceof HopperBlock).orElse(false)),
         FURNACES(GuiUtil.twoSprite("container_filter/furnaces"),
                 translatable("chesttracker.gui.containerFilter.furnaces"),
-                (pos, memory) -> memory.container().map(b -> b instanceof AbstractFurnaceBlock).orElse(false));
+                container -> container.map(b -> b instanceof AbstractFurnaceBlock).orElse(false));
 
         private final WidgetSprites sprites;
         private final Component tooltip;
+        private final Predicate<Optional<Block>> containers;
         private final CountingPredicate filter;
 
-        ContainerFilter(WidgetSprites sprites, Component tooltip, CountingPredicate filter) {
+        ContainerFilter(WidgetSprites sprites, Component tooltip, Predicate<Optional<Block>> containers) {
             this.sprites = sprites;
             this.tooltip = tooltip;
-            this.filter = filter;
+            this.containers = containers;
+            this.filter = (pos, memory) -> containers.test(memory.container());
         }
     }
 
@@ -9,11 +9,12 @@ import net.minecraft.client.gui.components.*;
 import net.minecraft.client.gui.components.events.GuiEventListener;
 import net.minecraft.client.gui.narration.NarratableEntry;
 import net.minecraft.client.gui.screens.Screen;
-import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.CommonComponents;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.phys.Vec3;
+import org.apache.commons.lang3.mutable.MutableInt;
 import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
 import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
 import red.jackf.chesttracker.api.providers.ProviderUtils;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
@@ -466,60 +467,49 @@ public class EditMemoryBankScreen extends BaseUtilScreen {
     }
 
     private void refreshManagementButtons() {
-        Pair<Set<BlockPos>, Set<BlockPos>> counts = partitionMemoriesInCurrentKey();
+        Pair<Integer, Integer> counts = countMemoriesInCurrentKey();
 
         if (pruneWithinRange != null) {
-            pruneWithinRange.setMessage(translatable("chesttracker.gui.editMemoryBank.manage.deleteWithinRange", manageWorkingRange, counts.getFirst()
-                                                                                                                                           .size()));
+            pruneWithinRange.setMessage(translatable("chesttracker.gui.editMemoryBank.manage.deleteWithinRange", manageWorkingRange, counts.getFirst()));
         }
         if (pruneOutsideRange != null) {
-            pruneOutsideRange.setMessage(translatable("chesttracker.gui.editMemoryBank.manage.deleteOutsideRange", manageWorkingRange, counts.getSecond()
-                                                                                                                                             .size()));
+            pruneOutsideRange.setMessage(translatable("chesttracker.gui.editMemoryBank.manage.deleteOutsideRange", manageWorkingRange, counts.getSecond()));
         }
     }
 
-    private Pair<Set<BlockPos>, Set<BlockPos>> partitionMemoriesInCurrentKey() {
-        final Pair<Set<BlockPos>, Set<BlockPos>> empty = Pair.of(Collections.emptySet(), Collections.emptySet());
+    /**
+     * @return How many memories in the current key are within and outside the working range of the player.
+     */
+    private Pair<Integer, Integer> countMemoriesInCurrentKey() {
+        final Pair<Integer, Integer> empty = Pair.of(0, 0);
         if (Minecraft.getInstance().player == null) return empty;
         var currentKey = ProviderUtils.getPlayersCurrentKey().orElse(null);
         if (currentKey == null) return empty;
         var currentMemories = memoryBank.getMemories(currentKey);
         if (currentMemories == null) return empty;
 
-        final double squareRange = (double) manageWorkingRange * manageWorkingRange;
         final Vec3 origin = Minecraft.getInstance().player.getEyePosition();
-        Set<BlockPos> within = new HashSet<>();
-        Set<BlockPos> outside = new HashSet<>();
-        for (BlockPos pos : currentMemories.getMemories().keySet()) {
-            if (origin.distanceToSqr(pos.getCenter()) < squareRange) {
-                within.add(pos);
-            } else {
-                outside.add(pos);
-            }
-        }
+        final MutableInt within = new MutableInt();
+        currentMemories.forEachWithin(origin, manageWorkingRange, (pos, memory) -> within.increment());
 
-        return Pair.of(within, outside);
+        return Pair.of(within.intValue(), currentMemories.getMemories().size() - within.intValue());
     }
 
     private void pruneOutsideRange() {
+        if (Minecraft.getInstance().player == null) return;
+        final Vec3 origin = Minecraft.getInstance().player.getEyePosition();
         ProviderUtils.getPlayersCurrentKey().ifPresent(currentKey -> {
-            Pair<Set<BlockPos>, Set<BlockPos>> counts = partitionMemoriesInCurrentKey();
-
-            for (BlockPos pos : counts.getSecond()) {
-                memoryBank.remove(currentKey, pos);
-            }
+            memoryBank.removeIf(currentKey, CountingPredicate.within(origin, manageWorkingRange).negate());
 
             refreshManagementButtons();
         });
     }
 
     private void pruneWithinRange() {
+        if (Minecraft.getInstance().player == null) return;
+        final Vec3 origin = Minecraft.getInstance().player.getEyePosition();
         ProviderUtils.getPlayersCurrentKey().ifPresent(currentKey -> {
-            Pair<Set<BlockPos>, Set<BlockPos>> counts = partitionMemoriesInCurrentKey();
-
-            for (BlockPos pos : counts.getFirst()) {
-                memoryBank.remove(currentKey, pos);
-            }
+            memoryBank.removeIf(currentKey, CountingPredicate.within(origin, manageWorkingRange));
 
             refreshManagementButtons();
         });
@@ -1,6 +1,5 @@
 package red.jackf.chesttracker.impl.gui.screen;
 
-import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.components.EditBox;
 import net.minecraft.client.gui.components.ImageButton;
@@ -19,7 +18,7 @@ import red.jackf.chesttracker.impl.gui.widget.StringSelectorWidget;
 import red.jackf.chesttracker.impl.gui.widget.TextWidget;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
 import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
-import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.storage.BankSummary;
 import red.jackf.chesttracker.impl.storage.Storage;
 import red.jackf.chesttracker.impl.util.GuiUtil;
 
@@ -43,7 +42,7 @@ public class MemoryBankManagerScreen extends BaseUtilScreen {
 
     private EditBox search = null;
     private StringSelectorWidget<String> memoryBankList;
-    private Map<String, Metadata> memoryBanks;
+    private Map<String, BankSummary> memoryBanks;
 
     /**
      * @param onRemoveScreen  - Runnable to run on cancel, usually when pressing escape or a back button
@@ -71,11 +70,8 @@ public class MemoryBankManagerScreen extends BaseUtilScreen {
     protected void init() {
         super.init();
 
-        this.memoryBanks = Storage.getAllIds().stream()
-                .sorted()
-                .map(id -> Pair.of(id, Storage.loadMetadata(id)))
-                .filter(pair -> pair.getSecond().isPresent())
-                .collect(Collectors.toMap(Pair::getFirst, p -> p.getSecond().get(), (a, b) -> a, LinkedHashMap::new));
+        this.memoryBanks = Storage.getSummaries().stream()
+                .collect(Collectors.toMap(BankSummary::id, summary -> summary, (a, b) -> a, LinkedHashMap::new));
 
         // backend label
         this.addRenderableOnly(new TextWidget(this.left + GuiConstants.MARGIN,
@@ -121,14 +117,14 @@ public class MemoryBankManagerScreen extends BaseUtilScreen {
             // update string list options
             this.memoryBankList.setOptions(this.memoryBanks.entrySet().stream()
                     .filter(entry -> {
-                        var name = entry.getValue().getName();
+                        var name = entry.getValue().name();
                         if (name == null) name = entry.getKey();
                         return name.toLowerCase().contains(term.toLowerCase());
                     }).collect(Collectors.toMap(
                             Map.Entry::getKey,
                             e -> {
-                                if (e.getValue().getName() != null) {
-                                    return Component.literal(e.getValue().getName()); // custom user-defined name
+                                if (e.getValue().name() != null) {
+                                    return Component.literal(e.getValue().name()); // custom user-defined name
                                 } else {
                                     var id = Component.literal(e.getKey());
                                     if (ChestTrackerConfig.INSTANCE.instance().gui.hideMemoryIds)
@@ -3,6 +3,7 @@ package red.jackf.chesttracker.impl.gui.screen;
 import net.minecraft.core.BlockPos;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
 import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
 import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
 import red.jackf.chesttracker.impl.memory.metadata.Metadata;
@@ -29,6 +30,8 @@ public interface MemoryBankView {
 
     void remove(ResourceLocation id, BlockPos pos);
 
+    int removeIf(ResourceLocation id, CountingPredicate predicate);
+
     void save();
 
     static MemoryBankView of(MemoryBankImpl bank) {
@@ -67,6 +70,11 @@ public interface MemoryBankView {
                 bank.removeMemory(id, pos);
             }
 
+            @Override
+            public int removeIf(ResourceLocation id, CountingPredicate predicate) {
+                return bank.removeIf(id, predicate);
+            }
+
             public void save() {
                 for (ResourceLocation key : toRemove)
                     bank.removeKey(key);
@@ -104,6 +112,11 @@ public interface MemoryBankView {
             @Override
             public void remove(ResourceLocation id, BlockPos pos) {}
 
+            @Override
+            public int removeIf(ResourceLocation id, CountingPredicate predicate) {
+                return 0;
+            }
+
             public void save() {}
         };
     }
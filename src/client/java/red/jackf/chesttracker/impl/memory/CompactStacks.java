@@ -0,0 +1,96 @@
+package red.jackf.chesttracker.impl.memory;
+
+import net.minecraft.world.item.ItemStack;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>Immutable list of item stacks, stored as a prototype stack with a count of 1 and a separate count for each
+ * entry. Prototypes can be shared between memories, such as every memory decoded from the same {@link ItemPalette}.</p>
+ *
+ * <p>{@link #get(int)} creates a new stack each time, so stacks given out can't change what is stored. Internal code
+ * should use {@link #prototype(int)} and {@link #count(int)} where a copy isn't needed.</p>
+ */
+public final class CompactStacks extends AbstractList<ItemStack> implements RandomAccess {
+    public static final CompactStacks EMPTY = new CompactStacks(new ItemStack[0], new int[0]);
+
+    private final ItemStack[] prototypes;
+    private final int[] counts;
+
+    private CompactStacks(ItemStack[] prototypes, int[] counts) {
+        this.prototypes = prototypes;
+        this.counts = counts;
+    }
+
+    /**
+     * Creates a compact copy of a list of stacks. Lists that are already compact are returned as-is.
+     */
+    public static CompactStacks copyOf(List<ItemStack> stacks) {
+        if (stacks instanceof CompactStacks compact) return compact;
+        if (stacks.isEmpty()) return EMPTY;
+        ItemStack[] prototypes = new ItemStack[stacks.size()];
+        int[] counts = new int[stacks.size()];
+        for (int i = 0; i < prototypes.length; i++) {
+            ItemStack stack = stacks.get(i);
+            prototypes[i] = stack.copyWithCount(1);
+            counts[i] = stack.getCount();
+        }
+        return new CompactStacks(prototypes, counts);
+    }
+
+    /**
+     * Creates a list from existing prototypes, without copying them.
+     *
+     * @param prototypes Prototypes for each entry, with a count of 1. These must not be modified afterwards.
+     * @param counts     Count for each entry.
+     */
+    public static CompactStacks wrap(ItemStack[] prototypes, int[] counts) {
+        if (prototypes.length != counts.length) throw new IllegalArgumentException("Mismatched prototype and count lengths");
+        if (prototypes.length == 0) return EMPTY;
+        return new CompactStacks(prototypes, counts);
+    }
+
+    /**
+     * Returns a list with the same counts, replacing each prototype. The counts are shared with this list.
+     *
+     * @param prototypeOf Function returning the prototype to use in place of an existing one.
+     * @return A list using the new prototypes, or this list if none changed.
+     */
+    public CompactStacks withPrototypes(UnaryOperator<ItemStack> prototypeOf) {
+        ItemStack[] replaced = null;
+        for (int i = 0; i < prototypes.length; i++) {
+            ItemStack prototype = prototypeOf.apply(prototypes[i]);
+            if (prototype == prototypes[i]) continue;
+            if (replaced == null) replaced = prototypes.clone();
+            replaced[i] = prototype;
+        }
+        return replaced == null ? this : new CompactStacks(replaced, counts);
+    }
+
+    /**
+     * @return A new stack for the entry at the given index.
+     */
+    @Override
+    public ItemStack get(int index) {
+        return prototypes[index].copyWithCount(counts[index]);
+    }
+
+    @Override
+    public int size() {
+        return prototypes.length;
+    }
+
+    /**
+     * @return The shared prototype for the entry at the given index, with a count of 1. Must not be modified.
+     */
+    public ItemStack prototype(int index) {
+        return prototypes[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+}
@@ -0,0 +1,127 @@
+package red.jackf.chesttracker.impl.memory;
+
+import com.mojang.serialization.*;
+import net.minecraft.world.item.ItemStack;
+import red.jackf.chesttracker.api.memory.Memory;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * <p>Palette of distinct items in a memory key, used so that each item and its components are only stored once on disk,
+ * similar to chunk section palettes.</p>
+ *
+ * <p>Memories saved with a palette store their items as a flat list of {@code [index, count]} pairs under
+ * {@code paletteItems}, instead of full item stacks under {@code items}.</p>
+ */
+public class ItemPalette {
+    public static final Codec<ItemPalette> CODEC = ItemStack.CODEC.listOf().xmap(ItemPalette::new, ItemPalette::entries);
+
+    private static final String ITEMS = "items";
+    private static final String PALETTE_ITEMS = "paletteItems";
+    private static final MapCodec<List<ItemStack>> FULL_ITEMS = ItemStack.CODEC.listOf().fieldOf(ITEMS);
+
+    private final List<ItemStack> entries;
+    private final Map<Entry, Integer> indices = new HashMap<>();
+
+    private ItemPalette(List<ItemStack> entries) {
+        // kept as-is, as saved indices refer to positions in this list
+        this.entries = new ArrayList<>(entries);
+        for (int i = 0; i < entries.size(); i++)
+            this.indices.putIfAbsent(new Entry(entries.get(i)), i);
+    }
+
+    public static ItemPalette empty() {
+        return new ItemPalette(List.of());
+    }
+
+    /**
+     * Creates a palette containing every distinct item in a collection of memories.
+     */
+    public static ItemPalette collect(Collection<Memory> memories) {
+        ItemPalette palette = empty();
+        for (Memory memory : memories) {
+            CompactStacks stacks = memory.stacks();
+            for (int i = 0; i < stacks.size(); i++)
+                palette.indexOf(stacks.prototype(i));
+        }
+        return palette;
+    }
+
+    /**
+     * @return Distinct items in this palette, each with a count of 1.
+     */
+    public List<ItemStack> entries() {
+        return entries;
+    }
+
+    /**
+     * Returns the index of an item in this palette, adding it if not yet present.
+     */
+    public int indexOf(ItemStack stack) {
+        return indices.computeIfAbsent(new Entry(stack), entry -> {
+            entries.add(stack.copyWithCount(1));
+            return entries.size() - 1;
+        });
+    }
+
+    /**
+     * Returns a codec for a memory's items that references this palette. Encodes to {@code paletteItems}; decodes from
+     * either {@code paletteItems} or a full {@code items} list for memories saved before palettes.
+     */
+    public MapCodec<List<ItemStack>> itemsCodec() {
+        return new MapCodec<>() {
+            @Override
+            public <T> Stream<T> keys(DynamicOps<T> ops) {
+                return Stream.of(ops.createString(PALETTE_ITEMS), ops.createString(ITEMS));
+            }
+
+            @Override
+            public <T> DataResult<List<ItemStack>> decode(DynamicOps<T> ops, MapLike<T> input) {
+                T paletted = input.get(PALETTE_ITEMS);
+                if (paletted == null) return FULL_ITEMS.decode(ops, input);
+
+                return Codec.INT_STREAM.parse(ops, paletted).flatMap(stream -> {
+                    int[] refs = stream.toArray();
+                    if (refs.length % 2 != 0) return DataResult.error(() -> "Odd length palette item list");
+                    // memories decoded from this palette share its entries as their prototypes
+                    ItemStack[] prototypes = new ItemStack[refs.length / 2];
+                    int[] counts = new int[refs.length / 2];
+                    for (int i = 0; i < prototypes.length; i++) {
+                        final int index = refs[i * 2];
+                        if (index < 0 || index >= entries.size())
+                            return DataResult.error(() -> "Palette index %d out of range for palette of size %d".formatted(index, entries.size()));
+                        prototypes[i] = entries.get(index);
+                        counts[i] = refs[i * 2 + 1];
+                    }
+                    return DataResult.success(CompactStacks.wrap(prototypes, counts));
+                });
+            }
+
+            @Override
+            public <T> RecordBuilder<T> encode(List<ItemStack> items, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+                CompactStacks stacks = CompactStacks.copyOf(items);
+                int[] refs = new int[stacks.size() * 2];
+                for (int i = 0; i < stacks.size(); i++) {
+                    refs[i * 2] = indexOf(stacks.prototype(i));
+                    refs[i * 2 + 1] = stacks.count(i);
+                }
+                return prefix.add(PALETTE_ITEMS, Codec.INT_STREAM.encodeStart(ops, IntStream.of(refs)));
+            }
+        };
+    }
+
+    // compares stacks by item and components, ignoring count
+    private record Entry(ItemStack stack) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry other && ItemStack.isSameItemSameComponents(stack, other.stack);
+        }
+
+        @Override
+        public int hashCode() {
+            return ItemStack.hashItemAndComponents(stack);
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package red.jackf.chesttracker.impl.memory;
 
+import net.minecraft.client.Minecraft;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.api.memory.MemoryBank;
 import red.jackf.chesttracker.api.memory.MemoryBankAccess;
+import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.impl.memory.metadata.Metadata;
 import red.jackf.chesttracker.impl.storage.ConnectionSettings;
 import red.jackf.chesttracker.impl.storage.Storage;
 import red.jackf.jackfredlib.client.api.gps.Coordinate;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 public class MemoryBankAccessImpl implements MemoryBankAccess {
     public static final MemoryBankAccessImpl INSTANCE = new MemoryBankAccessImpl();
+    private static final Logger LOGGER = ChestTracker.getLogger("Memory Bank Access");
     @Nullable
     private static MemoryBankImpl loaded = null;
+    @Nullable
+    private static PendingLoad loading = null;
 
     private MemoryBankAccessImpl() {}
 
@@ -23,18 +31,21 @@ public class MemoryBankAccessImpl implements MemoryBankAccess {
     @Override
     public boolean loadOrCreate(String memoryBankId, String creationName) {
         INSTANCE.unload();
-        loaded = Storage.load(memoryBankId).orElseGet(() -> {
-            var bank = new MemoryBankImpl(Metadata.blankWithName(creationName), new HashMap<>());
-            bank.setId(memoryBankId);
-            return bank;
-        });
+        loaded = Storage.load(memoryBankId).orElseGet(() -> create(memoryBankId, creationName));
         INSTANCE.save();
 
         return true;
     }
 
     public boolean unload() {
-        if (loaded == null) return false;
+        boolean wasLoading = loading != null;
+        if (wasLoading) {
+            // let it finish in the background so queued events still get saved
+            loading.detached = true;
+            loading = null;
+        }
+
+        if (loaded == null) return wasLoading;
         save();
         loaded = null;
         return true;
@@ -45,6 +56,11 @@ public class MemoryBankAccessImpl implements MemoryBankAccess {
         return Optional.ofNullable(loaded);
     }
 
+    @Override
+    public Optional<MemoryBankSnapshot> getSnapshot() {
+        return Optional.ofNullable(loaded).map(MemoryBankImpl::snapshot);
+    }
+
     public Optional<MemoryBankImpl> getLoadedInternal() {
         return Optional.ofNullable(loaded);
     }
@@ -61,6 +77,86 @@ public class MemoryBankAccessImpl implements MemoryBankAccess {
         // not in-game; don't load
         var settings = ConnectionSettings.getOrCreate(coordinate.id());
         var id = settings.memoryBankIdOverride().orElse(coordinate.id());
-        return loadOrCreate(id, coordinate.userFriendlyName());
+        loadOrCreateAsync(id, coordinate.userFriendlyName());
+        return true;
+    }
+
+    /**
+     * Starts loading a memory bank in the background, or creates one if none exist. Until it finishes, no bank is
+     * loaded and actions passed to {@link #runWhenLoaded(Runnable)} are queued.
+     *
+     * @param memoryBankId ID of the memory bank to load.
+     * @param creationName Default user-facing name if creating a new memory bank.
+     */
+    public void loadOrCreateAsync(String memoryBankId, String creationName) {
+        unload();
+        PendingLoad pending = new PendingLoad();
+        loading = pending;
+
+        Storage.loadAsync(memoryBankId).whenCompleteAsync((result, ex) -> {
+            if (ex != null) {
+                // don't create a blank bank over one that failed to load
+                LOGGER.error("Error loading memory bank {}", memoryBankId, ex);
+                if (loading == pending) loading = null;
+                return;
+            }
+
+            MemoryBankImpl bank = result.orElseGet(() -> create(memoryBankId, creationName));
+            if (pending.detached) {
+                if (pending.queued.isEmpty()) return;
+                // loaded again since, so this copy may be stale; put the events into the live bank instead
+                if (loaded != null && memoryBankId.equals(loaded.getId())) {
+                    LOGGER.debug("Replaying {} queued events into reloaded bank {}", pending.queued.size(), memoryBankId);
+                    pending.queued.forEach(Runnable::run);
+                    save();
+                    return;
+                }
+                LOGGER.debug("Replaying {} queued events into unloaded bank {}", pending.queued.size(), memoryBankId);
+                MemoryBankImpl current = loaded;
+                loaded = bank;
+                pending.queued.forEach(Runnable::run);
+                Storage.save(bank);
+                loaded = current;
+            } else {
+                LOGGER.debug("Finished loading {}, replaying {} queued events", memoryBankId, pending.queued.size());
+                loading = null;
+                loaded = bank;
+                pending.queued.forEach(Runnable::run);
+                save();
+            }
+        }, Minecraft.getInstance());
+    }
+
+    /**
+     * @return Whether a memory bank is currently being loaded in the background.
+     */
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    /**
+     * Runs an action now, or if a memory bank is being loaded, once it has finished. Used for events which modify the
+     * loaded memory bank, such as closing a container, so they aren't lost while loading.
+     *
+     * @param action Action to run.
+     */
+    public void runWhenLoaded(Runnable action) {
+        if (loading != null) {
+            loading.queued.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    private static MemoryBankImpl create(String memoryBankId, String creationName) {
+        var bank = new MemoryBankImpl(Metadata.blankWithName(creationName), new HashMap<>());
+        bank.setId(memoryBankId);
+        bank.setRegistries(Storage.getRegistries());
+        return bank;
+    }
+
+    private static class PendingLoad {
+        private final List<Runnable> queued = new ArrayList<>();
+        private boolean detached = false;
     }
 }
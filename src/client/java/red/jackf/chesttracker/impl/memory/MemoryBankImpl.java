@@ -1,20 +1,29 @@
 package red.jackf.chesttracker.impl.memory;
 
+import com.google.common.collect.Sets;
 import com.mojang.serialization.Codec;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.phys.Vec3;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.api.ClientBlockSource;
 import red.jackf.chesttracker.api.memory.Memory;
 import red.jackf.chesttracker.api.memory.MemoryBank;
+import red.jackf.chesttracker.api.memory.MemoryBankSnapshot;
+import red.jackf.chesttracker.api.memory.MemoryBankTransaction;
 import red.jackf.chesttracker.api.memory.MemoryKey;
 import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
 import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
 import red.jackf.chesttracker.api.providers.MemoryLocation;
 import red.jackf.chesttracker.api.providers.ProviderUtils;
+import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.impl.memory.key.ManualMode;
 import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
 import red.jackf.chesttracker.impl.memory.key.SearchContext;
@@ -24,8 +33,11 @@ import red.jackf.whereisit.api.SearchRequest;
 import red.jackf.whereisit.api.SearchResult;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class MemoryBankImpl implements MemoryBank {
+    private static final Logger LOGGER = ChestTracker.getLogger("Memory Bank");
     public static final Codec<Map<ResourceLocation, MemoryKeyImpl>> DATA_CODEC = JFLCodecs.mutableMap(Codec.unboundedMap(ResourceLocation.CODEC, MemoryKeyImpl.Codecs.MAIN));
 
     ////////////
@@ -33,13 +45,85 @@ public class MemoryBankImpl implements MemoryBank {
     ////////////
 
     private final Map<ResourceLocation, MemoryKeyImpl> memoryKeys;
+
+    /**
+     * Keys that are stored but not currently in memory. These are loaded using {@link #keyLoader} when first accessed.
+     */
+    private final Set<ResourceLocation> unloadedKeys = new HashSet<>();
+
+    /**
+     * Keys that are stored but failed to load. These are left alone so that a blank key isn't saved over them.
+     */
+    private final Set<ResourceLocation> unavailableKeys = new HashSet<>();
+    private final Map<ResourceLocation, Long> lastAccessed = new HashMap<>();
+    private final @Nullable KeyLoader keyLoader;
+
+    /**
+     * Keys that have been changed since the last save. Storage backends only need to rewrite these.
+     */
+    private final Set<ResourceLocation> dirtyKeys = new HashSet<>();
+
+    /**
+     * Keys removed since the last save, kept until then so that the save can record what they held.
+     */
+    private final Map<ResourceLocation, MemoryKeyImpl> removedKeys = new HashMap<>();
+
+    /**
+     * Snapshots from {@link #createSaveSnapshot()} that haven't finished saving yet.
+     */
+    private final List<MemoryBankImpl> savingSnapshots = new ArrayList<>();
+
+    /**
+     * For save snapshots, the number of memories in each key loaded in the live bank when the snapshot was taken.
+     */
+    private @Nullable Map<ResourceLocation, Integer> loadedMemoryCounts = null;
+    private final StackInterner stackInterner = new StackInterner();
+    private @Nullable MemoryBankSnapshotImpl lastSnapshot = null;
+
+    /**
+     * Unloaded keys handed to snapshots, which are given a copy if this bank loads them before the snapshot does.
+     */
+    private final Map<ResourceLocation, StoredKey> snapshotStoredKeys = new HashMap<>();
+    private @Nullable HolderLookup.Provider registries = null;
     private Metadata metadata;
     private String id;
 
     public MemoryBankImpl(Metadata metadata, Map<ResourceLocation, MemoryKeyImpl> keys) {
+        this(metadata, keys, true);
+    }
+
+    private MemoryBankImpl(Metadata metadata, Map<ResourceLocation, MemoryKeyImpl> keys, boolean attach) {
         this.metadata = metadata;
         this.memoryKeys = keys;
-        this.memoryKeys.values().forEach(key -> key.setMemoryBank(this));
+        this.keyLoader = null;
+        if (attach) this.memoryKeys.values().forEach(key -> key.attach(this));
+    }
+
+    /**
+     * Creates a bank that holds keys without attaching them, such as a copy of another bank's keys to be saved. The
+     * keys' memories may be shared with a live bank, so aren't moved to this bank's item prototypes.
+     *
+     * @param metadata Metadata for this bank.
+     * @param keys     Keys to hold; these stay attached to whichever bank they were before, if any.
+     * @return A bank for saving the given keys.
+     */
+    public static MemoryBankImpl detached(Metadata metadata, Map<ResourceLocation, MemoryKeyImpl> keys) {
+        return new MemoryBankImpl(metadata, keys, false);
+    }
+
+    /**
+     * Creates a memory bank where no keys are loaded yet. Keys are loaded from storage when first accessed, and may be
+     * unloaded again if not used for a while; see {@link #unloadIdleKeys(long, Set)}.
+     *
+     * @param metadata   Metadata for this bank.
+     * @param storedKeys IDs of all keys in storage.
+     * @param keyLoader  Loader for a single stored key.
+     */
+    public MemoryBankImpl(Metadata metadata, Set<ResourceLocation> storedKeys, KeyLoader keyLoader) {
+        this.metadata = metadata;
+        this.memoryKeys = new HashMap<>();
+        this.keyLoader = keyLoader;
+        this.unloadedKeys.addAll(storedKeys);
     }
 
     public String getId() {
@@ -50,6 +134,17 @@ public class MemoryBankImpl implements MemoryBank {
         this.id = id;
     }
 
+    /**
+     * @return Registry access that this bank's items were decoded with, and that stored keys are loaded with.
+     */
+    public @Nullable HolderLookup.Provider getRegistries() {
+        return registries;
+    }
+
+    public void setRegistries(@Nullable HolderLookup.Provider registries) {
+        this.registries = registries;
+    }
+
     public Metadata getMetadata() {
         return metadata;
     }
@@ -58,12 +153,288 @@ public class MemoryBankImpl implements MemoryBank {
         this.metadata = metadata;
     }
 
+    //////////////////
+    // DIRTY CHECKS //
+    //////////////////
+
+    /**
+     * Marks a key as changed since the last save, whether it was modified, created or removed.
+     *
+     * @param key Key to mark as dirty
+     */
+    public void markDirty(ResourceLocation key) {
+        this.dirtyKeys.add(key);
+    }
+
+    /**
+     * Marks every current key as dirty, for example after being loaded from an older storage layout.
+     */
+    public void markAllDirty() {
+        this.loadAll();
+        this.dirtyKeys.addAll(this.memoryKeys.keySet());
+        this.memoryKeys.values().forEach(MemoryKeyImpl::markAllChanged);
+    }
+
+    /**
+     * @return An immutable copy of all keys changed since the last save. Keys may no longer be present in this bank if
+     * they have since been removed.
+     */
+    public Set<ResourceLocation> getDirtyKeys() {
+        return Set.copyOf(this.dirtyKeys);
+    }
+
+    public boolean isDirty() {
+        return !this.dirtyKeys.isEmpty();
+    }
+
+    /**
+     * Called after a successful save, marking all keys as clean.
+     */
+    public void clearDirty() {
+        for (ResourceLocation keyId : this.dirtyKeys) {
+            MemoryKeyImpl key = this.memoryKeys.get(keyId);
+            if (key != null) key.clearChanged();
+        }
+        this.dirtyKeys.clear();
+        this.removedKeys.clear();
+    }
+
+    /**
+     * Called once a snapshot has finished saving, marking its changes as dirty again if it failed.
+     *
+     * @param snapshot Snapshot from {@link #createSaveSnapshot()} that finished saving.
+     * @param success  Whether the snapshot was saved successfully.
+     */
+    public void finishSave(MemoryBankImpl snapshot, boolean success) {
+        this.savingSnapshots.remove(snapshot);
+        if (!success) this.restoreDirty(snapshot);
+    }
+
+    private void restoreDirty(MemoryBankImpl snapshot) {
+        for (ResourceLocation keyId : snapshot.dirtyKeys) {
+            this.markDirty(keyId);
+            MemoryKeyImpl live = this.memoryKeys.get(keyId);
+            if (live == null) live = this.removedKeys.get(keyId);
+            MemoryKeyImpl saved = snapshot.memoryKeys.get(keyId);
+            MemoryKeyImpl removed = snapshot.removedKeys.get(keyId);
+            if (live == null) {
+                if (removed != null) this.removedKeys.put(keyId, removed);
+                continue;
+            }
+            if (saved != null) {
+                live.mergeChanged(saved);
+            } else if (removed != null) {
+                live.mergeReplaced(removed);
+            } else {
+                live.markAllChanged();
+            }
+        }
+    }
+
+    /**
+     * <p>Creates a copy of this bank to be saved off the client thread, containing a copy of the metadata and of each
+     * dirty key. Clean keys are not included, as they do not need to be rewritten.</p>
+     *
+     * <p>This marks this bank as clean; once saved, the snapshot should be passed to {@link #finishSave(MemoryBankImpl, boolean)}
+     * so that its changes can be put back if the save failed.</p>
+     *
+     * @return A snapshot of this bank's dirty state.
+     */
+    public MemoryBankImpl createSaveSnapshot() {
+        Map<ResourceLocation, MemoryKeyImpl> copies = new HashMap<>();
+        for (ResourceLocation keyId : this.dirtyKeys) {
+            MemoryKeyImpl key = this.memoryKeys.get(keyId);
+            if (key != null) copies.put(keyId, key.copy());
+        }
+
+        MemoryBankImpl snapshot = detached(this.metadata.deepCopy(), copies);
+        snapshot.setId(this.id);
+        snapshot.dirtyKeys.addAll(this.dirtyKeys);
+        snapshot.removedKeys.putAll(this.removedKeys);
+        snapshot.loadedMemoryCounts = this.getLoadedMemoryCounts();
+        this.savingSnapshots.add(snapshot);
+        this.clearDirty();
+        return snapshot;
+    }
+
+    //////////////////
+    // LAZY LOADING //
+    //////////////////
+
+    /**
+     * Loads a key from storage if it isn't already loaded, and marks it as recently used. Keys that fail to load are
+     * marked as unavailable.
+     */
+    private @Nullable MemoryKeyImpl resolve(ResourceLocation keyId) {
+        if (this.unloadedKeys.remove(keyId) && this.keyLoader != null) {
+            Optional<MemoryKeyImpl> loaded = this.keyLoader.load(keyId, this.registries);
+            if (loaded.isPresent()) {
+                loaded.get().attach(this);
+                this.memoryKeys.put(keyId, loaded.get());
+            } else {
+                this.markUnavailable(keyId);
+            }
+            this.onKeyLoaded(keyId, loaded.orElse(null));
+        }
+
+        MemoryKeyImpl key = this.memoryKeys.get(keyId);
+        if (key != null) this.lastAccessed.put(keyId, Util.getMillis());
+        return key;
+    }
+
+    /**
+     * Loads a stored key ahead of its first access, such as the player's current key while loading a bank in the
+     * background. Safe to call from another thread only before the bank has been handed to the client thread.
+     *
+     * @param keyId ID of the key to load.
+     */
+    public void preload(ResourceLocation keyId) {
+        this.resolve(keyId);
+    }
+
+    /**
+     * Loads every stored key. Used when all keys are needed at once, such as when rewriting the whole bank.
+     */
+    public void loadAll() {
+        if (this.unloadedKeys.isEmpty()) return;
+
+        if (this.keyLoader != null) {
+            final long now = Util.getMillis();
+            Map<ResourceLocation, MemoryKeyImpl> loaded = this.keyLoader.loadAll(List.copyOf(this.unloadedKeys), this.registries);
+            loaded.forEach((keyId, key) -> {
+                key.attach(this);
+                this.memoryKeys.put(keyId, key);
+                this.onKeyLoaded(keyId, key);
+                this.lastAccessed.put(keyId, now);
+            });
+            this.unloadedKeys.removeAll(loaded.keySet());
+            for (ResourceLocation keyId : List.copyOf(this.unloadedKeys)) {
+                this.markUnavailable(keyId);
+                this.onKeyLoaded(keyId, null);
+            }
+        }
+
+        this.unloadedKeys.clear();
+    }
+
+    // snapshots still waiting to read this key get it as it was loaded, before anything changes it
+    private void onKeyLoaded(ResourceLocation keyId, @Nullable MemoryKeyImpl key) {
+        StoredKey stored = this.snapshotStoredKeys.remove(keyId);
+        if (stored != null) stored.complete(key != null ? key.snapshot() : null);
+    }
+
+    private void markUnavailable(ResourceLocation keyId) {
+        LOGGER.warn("Couldn't load key {} in {}; changes to it won't be saved this session", keyId, this.id);
+        this.unavailableKeys.add(keyId);
+    }
+
+    /**
+     * @return Whether a key is stored but failed to load, so can't be changed without losing what's stored.
+     */
+    public boolean isUnavailable(ResourceLocation keyId) {
+        return this.unavailableKeys.contains(keyId);
+    }
+
+    // in case a save of an older copy fails and needs to be merged back in
+    private boolean isSaving(ResourceLocation keyId) {
+        for (MemoryBankImpl snapshot : this.savingSnapshots)
+            if (snapshot.dirtyKeys.contains(keyId)) return true;
+        return false;
+    }
+
+    /**
+     * Unloads keys that haven't been accessed recently, so they don't stay in memory for the whole session. Only keys
+     * that have finished saving are unloaded; they are loaded from storage again when next accessed.
+     *
+     * @param idleMillis How long since a key was last accessed before it may be unloaded.
+     * @param keep       Keys to keep loaded regardless, such as the player's current key.
+     * @return How many keys were unloaded.
+     */
+    public int unloadIdleKeys(long idleMillis, Set<ResourceLocation> keep) {
+        if (this.keyLoader == null) return 0;
+        final long cutoff = Util.getMillis() - idleMillis;
+        int unloaded = 0;
+
+        var iter = this.memoryKeys.keySet().iterator();
+        while (iter.hasNext()) {
+            ResourceLocation keyId = iter.next();
+            if (keep.contains(keyId) || this.dirtyKeys.contains(keyId) || this.isSaving(keyId)) continue;
+            if (this.lastAccessed.getOrDefault(keyId, 0L) > cutoff) continue;
+
+            iter.remove();
+            this.lastAccessed.remove(keyId);
+            this.unloadedKeys.add(keyId);
+            unloaded++;
+        }
+
+        return unloaded;
+    }
+
+    /**
+     * Takes a read-only snapshot of this bank that can be read from other threads. Only keys changed since the last
+     * snapshot are copied, and if nothing has changed the last snapshot is returned again. Keys that aren't loaded are
+     * read from storage by the snapshot when first asked for, without loading them into this bank. Must be called on
+     * the client thread.
+     *
+     * @return A snapshot of every key in this bank as it is now.
+     */
+    public MemoryBankSnapshot snapshot() {
+        final MemoryBankSnapshotImpl previous = this.lastSnapshot;
+        Map<ResourceLocation, MemoryKeyImpl> keys = new HashMap<>();
+        Map<ResourceLocation, StoredKey> stored = new HashMap<>();
+
+        // keys are only unloaded once saved, so a copy from before they were unloaded is still current
+        for (ResourceLocation keyId : this.unloadedKeys) {
+            MemoryKeyImpl copy = previous != null ? previous.keys().get(keyId) : null;
+            if (copy != null) {
+                keys.put(keyId, copy);
+            } else if (this.keyLoader != null) {
+                StoredKey storedKey = this.snapshotStoredKeys.get(keyId);
+                if (storedKey == null) {
+                    storedKey = new StoredKey(keyId, this.keyLoader, this, this.registries);
+                    this.snapshotStoredKeys.put(keyId, storedKey);
+                }
+                stored.put(keyId, storedKey);
+            }
+        }
+        this.memoryKeys.forEach((keyId, key) -> keys.put(keyId, key.snapshot()));
+
+        if (previous != null && previous.id().equals(this.id) && previous.keys().equals(keys) && previous.stored().equals(stored))
+            return previous;
+        return this.lastSnapshot = new MemoryBankSnapshotImpl(this.id, Collections.unmodifiableMap(keys), Collections.unmodifiableMap(stored));
+    }
+
+    /**
+     * @return Number of memories in each loaded key. For save snapshots, this includes keys that were loaded but not
+     * dirty when the snapshot was taken.
+     */
+    public Map<ResourceLocation, Integer> getLoadedMemoryCounts() {
+        if (this.loadedMemoryCounts != null) return this.loadedMemoryCounts;
+        Map<ResourceLocation, Integer> counts = new HashMap<>(this.memoryKeys.size());
+        this.memoryKeys.forEach((keyId, key) -> counts.put(keyId, key.getMemories().size()));
+        return counts;
+    }
+
+    /**
+     * @return Number of keys currently loaded in memory.
+     */
+    public int getLoadedKeyCount() {
+        return this.memoryKeys.size();
+    }
+
     ///////////////////////
     // MEMORY MANAGEMENT //
     ///////////////////////
 
     /**
-     * @return All memories in every key of this bank
+     * @return Pool of item prototypes shared by all memories in this bank.
+     */
+    public StackInterner getStackInterner() {
+        return stackInterner;
+    }
+
+    /**
+     * @return All currently loaded keys of this bank. Keys that haven't been accessed yet may not be present.
      */
     public Map<ResourceLocation, MemoryKeyImpl> getMemories() {
         return memoryKeys;
@@ -75,7 +446,25 @@ public class MemoryBankImpl implements MemoryBank {
      * @param key Key to remove
      */
     public void removeKey(ResourceLocation key) {
-        this.memoryKeys.remove(key);
+        // removing a key that failed to load is allowed, as nothing is written in its place
+        boolean wasStored = this.unloadedKeys.contains(key) || this.unavailableKeys.remove(key);
+        // loaded first so that the save can record what the key held
+        if (this.resolve(key) == null && !wasStored) return;
+        this.dropKey(key);
+        this.markDirty(key);
+    }
+
+    private void dropKey(ResourceLocation key) {
+        MemoryKeyImpl removed = this.memoryKeys.remove(key);
+        if (removed != null) this.removedKeys.put(key, removed);
+        this.lastAccessed.remove(key);
+    }
+
+    /**
+     * @return A key removed since the last save, as it was when removed.
+     */
+    public Optional<MemoryKeyImpl> getRemovedKey(ResourceLocation key) {
+        return Optional.ofNullable(this.removedKeys.get(key));
     }
 
     /**
@@ -86,8 +475,44 @@ public class MemoryBankImpl implements MemoryBank {
      * @param stackMergeMode How to merge identical stacks
      */
     public List<ItemStack> getCounts(ResourceLocation key, CountingPredicate filter, StackMergeMode stackMergeMode) {
-        if (this.memoryKeys.containsKey(key)) {
-            return this.memoryKeys.get(key).getCounts(filter, stackMergeMode);
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey != null) {
+            return memoryKey.getCounts(filter, stackMergeMode);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns the total of each item within a given key in memories from matching containers, merged as with
+     * {@link StackMergeMode#ALL}. Not sorted in a guaranteed order.
+     *
+     * @param key             Memory key to pull from
+     * @param containerFilter Filter for which containers to count, given each memory's {@link Memory#container()}
+     */
+    public List<ItemStack> getTotalCounts(ResourceLocation key, Predicate<Optional<Block>> containerFilter) {
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey != null) {
+            return memoryKey.getTotalCounts(containerFilter);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns a list of ItemStacks in memories within a range of a point in a given key, matching the given filter.
+     * Only memories near the point are checked. Not sorted in a guaranteed order.
+     *
+     * @param key            Memory key to pull from
+     * @param origin         Point to count around
+     * @param radius         Radius around the point that memories must be within
+     * @param filter         Filter that memories must pass to be counted
+     * @param stackMergeMode How to merge identical stacks
+     */
+    public List<ItemStack> getCountsWithin(ResourceLocation key, Vec3 origin, double radius, CountingPredicate filter, StackMergeMode stackMergeMode) {
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey != null) {
+            return memoryKey.getCountsWithin(origin, radius, filter, stackMergeMode);
         } else {
             return Collections.emptyList();
         }
@@ -101,9 +526,9 @@ public class MemoryBankImpl implements MemoryBank {
      * @return A list of search requests consisting of matching memories in this key.
      */
     public List<SearchResult> doSearch(ResourceLocation key, SearchRequest request) {
-        if (!this.memoryKeys.containsKey(key)) return Collections.emptyList();
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey == null) return Collections.emptyList();
 
-        MemoryKeyImpl memoryKey = this.memoryKeys.get(key);
         final Vec3 startPos = Minecraft.getInstance().player != null ? Minecraft.getInstance().player.position() : null;
         if (startPos == null) return Collections.emptyList();
 
@@ -111,19 +536,23 @@ public class MemoryBankImpl implements MemoryBank {
     }
 
     /**
-     * Returns a list of all memory keys in this bank.
+     * Returns a view of all memory keys in this bank, whether loaded or not.
      */
     public Set<ResourceLocation> getKeys() {
-        return this.memoryKeys.keySet();
+        return Sets.union(this.memoryKeys.keySet(), this.unloadedKeys);
     }
 
     @Override
     public Set<ResourceLocation> getMemoryKeys() {
-        return Set.copyOf(this.memoryKeys.keySet());
+        return Set.copyOf(this.getKeys());
     }
 
+    /**
+     * {@inheritDoc} This loads every key in the bank.
+     */
     @Override
     public Map<ResourceLocation, MemoryKey> getAllMemories() {
+        this.loadAll();
         return Map.copyOf(this.memoryKeys);
     }
 
@@ -137,53 +566,149 @@ public class MemoryBankImpl implements MemoryBank {
 
     @Override
     public Optional<MemoryKey> getKey(ResourceLocation keyId) {
-        return Optional.ofNullable(this.memoryKeys.get(keyId));
+        return Optional.ofNullable(this.resolve(keyId));
     }
 
     public Optional<MemoryKeyImpl> getKeyInternal(ResourceLocation key) {
-        return Optional.ofNullable(memoryKeys.get(key));
+        return Optional.ofNullable(this.resolve(key));
     }
 
-    public MemoryKeyImpl getOrCreateKeyInternal(ResourceLocation key) {
-        return this.memoryKeys.computeIfAbsent(key, ignored -> {
-            var newKey = new MemoryKeyImpl();
-            newKey.setMemoryBank(this);
-            return newKey;
-        });
+    /**
+     * Gets a key, creating it if it doesn't exist.
+     *
+     * @param key ID of the key to get or create.
+     * @return The key, or null if it is stored but failed to load.
+     */
+    public @Nullable MemoryKeyImpl getOrCreateKeyInternal(ResourceLocation key) {
+        MemoryKeyImpl existing = this.resolve(key);
+        if (existing != null) return existing;
+        if (this.unavailableKeys.contains(key)) return null;
+
+        var newKey = new MemoryKeyImpl();
+        newKey.attach(this);
+        // replaces anything stored for a previously removed key of the same ID
+        MemoryKeyImpl removed = this.removedKeys.remove(key);
+        if (removed != null) {
+            newKey.mergeReplaced(removed);
+        } else {
+            newKey.markAllChanged();
+        }
+        this.memoryKeys.put(key, newKey);
+        this.lastAccessed.put(key, Util.getMillis());
+        return newKey;
     }
 
     @Override
     public void addMemory(ResourceLocation keyId, BlockPos location, Memory memory) {
         MemoryKeyImpl key = this.getOrCreateKeyInternal(keyId);
+        if (key == null) return;
 
         key.add(location, memory);
+        this.markDirty(keyId);
 
         // if we didn't want the memory
         if (key.isEmpty()) {
-            this.memoryKeys.remove(keyId);
+            this.dropKey(keyId);
         }
     }
 
     @Override
     public void removeMemory(ResourceLocation key, BlockPos pos) {
-        MemoryKeyImpl memoryKey = this.memoryKeys.get(key);
+        MemoryKeyImpl memoryKey = this.resolve(key);
         if (memoryKey != null) {
             memoryKey.remove(pos);
+            this.markDirty(key);
             if (memoryKey.isEmpty()) {
-                this.memoryKeys.remove(key);
+                this.dropKey(key);
+            }
+        }
+    }
+
+    @Override
+    public Map<ResourceLocation, MemoryBankTransaction.Changes> batch(Consumer<MemoryBankTransaction> changes) {
+        MemoryBankTransactionImpl transaction = new MemoryBankTransactionImpl();
+        changes.accept(transaction);
+
+        Map<ResourceLocation, MemoryBankTransaction.Changes> applied = new HashMap<>();
+        transaction.getOperations().forEach((keyId, operations) -> {
+            MemoryBankTransaction.Changes keyChanges = this.applyBatch(keyId, operations);
+            if (keyChanges != null) applied.put(keyId, keyChanges);
+        });
+        return applied;
+    }
+
+    private @Nullable MemoryBankTransaction.Changes applyBatch(ResourceLocation keyId, List<MemoryBankTransactionImpl.Operation> operations) {
+        MemoryKeyImpl key = this.resolve(keyId);
+        if (key == null) {
+            // removing from a key that doesn't exist does nothing
+            if (operations.stream().noneMatch(MemoryBankTransactionImpl.Operation::isAdd)) return null;
+            key = this.getOrCreateKeyInternal(keyId);
+            if (key == null) return null;
+        }
+
+        int added = 0;
+        int removed = 0;
+        for (MemoryBankTransactionImpl.Operation operation : operations) {
+            if (operation.isAdd()) {
+                boolean existed = key.get(operation.position()).isPresent();
+                key.add(operation.position(), operation.memory());
+                Memory stored = key.get(operation.position()).orElse(null);
+                if (stored == operation.memory()) added++;
+                else if (existed && stored == null) removed++;
+            } else if (key.remove(operation.position())) {
+                removed++;
             }
         }
+
+        if (added > 0 || removed > 0) this.markDirty(keyId);
+        if (key.isEmpty()) this.dropKey(keyId);
+        return added > 0 || removed > 0 ? new MemoryBankTransaction.Changes(added, removed) : null;
+    }
+
+    /**
+     * Removes the memories at each of the given positions in a key, removing the key if left empty.
+     *
+     * @param key       Memory key to remove from.
+     * @param positions Positions of memories to remove.
+     * @return How many memories were removed.
+     */
+    public int removeAll(ResourceLocation key, Collection<BlockPos> positions) {
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey == null) return 0;
+        return this.afterBulkRemove(key, memoryKey, memoryKey.removeAll(positions));
+    }
+
+    /**
+     * Removes all memories in a key matching a predicate, removing the key if left empty.
+     *
+     * @param key       Memory key to remove from.
+     * @param predicate Predicate that memories to remove pass.
+     * @return How many memories were removed.
+     */
+    public int removeIf(ResourceLocation key, CountingPredicate predicate) {
+        MemoryKeyImpl memoryKey = this.resolve(key);
+        if (memoryKey == null) return 0;
+        return this.afterBulkRemove(key, memoryKey, memoryKey.removeIf(predicate));
+    }
+
+    private int afterBulkRemove(ResourceLocation key, MemoryKeyImpl memoryKey, int removed) {
+        if (removed > 0) this.markDirty(key);
+        if (memoryKey.isEmpty()) this.dropKey(key);
+        return removed;
     }
 
     public void setManualModeOverride(ResourceLocation key, BlockPos pos, ManualMode mode) {
         if (mode == ManualMode.DEFAULT && !this.getKeys().contains(key)) return;
 
         var keyImpl = this.getOrCreateKeyInternal(key);
+        if (keyImpl == null) return;
         var overrides = keyImpl.overrides();
         if (mode == ManualMode.DEFAULT && !overrides.containsKey(pos)) return;
 
         var override = overrides.computeIfAbsent(pos, pos1 -> new OverrideInfo());
         override.setManualMode(mode);
+        keyImpl.markChanged(pos);
+        this.markDirty(key);
 
         if (!override.shouldKeep()) {
             overrides.remove(pos);
@@ -198,6 +723,7 @@ public class MemoryBankImpl implements MemoryBank {
         if (shouldRemove && !this.getKeys().contains(key)) return;
 
         MemoryKeyImpl keyImpl = this.getOrCreateKeyInternal(key);
+        if (keyImpl == null) return;
         Map<BlockPos, OverrideInfo> overrides = keyImpl.overrides();
         if (shouldRemove && !overrides.containsKey(pos)) return;
 
@@ -205,6 +731,8 @@ public class MemoryBankImpl implements MemoryBank {
 
         OverrideInfo override = overrides.computeIfAbsent(pos, pos1 -> new OverrideInfo());
         override.setCustomName(name);
+        keyImpl.markChanged(pos);
+        this.markDirty(key);
 
         // set to keep when adding a custom name
         if (!shouldRemove) {
@@ -223,4 +751,31 @@ public class MemoryBankImpl implements MemoryBank {
             }
         }
     }
+
+    /**
+     * Loads memory keys from storage, for banks with lazily loaded keys.
+     */
+    @FunctionalInterface
+    public interface KeyLoader {
+        /**
+         * @param keyId      ID of the key to load.
+         * @param registries Registry access for decoding items.
+         * @return The loaded key, or an empty optional if missing or errored.
+         */
+        Optional<MemoryKeyImpl> load(ResourceLocation keyId, @Nullable HolderLookup.Provider registries);
+
+        /**
+         * Loads several keys at once. Implementations may decode them in parallel.
+         *
+         * @param keyIds     IDs of the keys to load.
+         * @param registries Registry access for decoding items.
+         * @return The loaded keys. Keys that are missing or errored are left out.
+         */
+        default Map<ResourceLocation, MemoryKeyImpl> loadAll(Collection<ResourceLocation> keyIds, @Nullable HolderLookup.Provider registries) {
+            Map<ResourceLocation, MemoryKeyImpl> loaded = new HashMap<>();
+            for (ResourceLocation keyId : keyIds)
+                this.load(keyId, registries).ifPresent(key -> loaded.put(keyId, key));
+            return loaded;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package red.jackf.chesttracker.impl.memory;
+
+import com.google.common.collect.Sets;
+import net.minecraft.resources.ResourceLocation;
+import red.jackf.chesttracker.api.memory.MemoryBankSnapshot;
+import red.jackf.chesttracker.api.memory.MemoryKey;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * @param id     ID of the bank this snapshot was taken from.
+ * @param keys   Snapshots of each key loaded in the bank. Not modified after creation.
+ * @param stored Keys that weren't loaded in the bank, read from storage when first asked for. Not modified after
+ *               creation.
+ */
+public record MemoryBankSnapshotImpl(String id, Map<ResourceLocation, MemoryKeyImpl> keys, Map<ResourceLocation, StoredKey> stored) implements MemoryBankSnapshot {
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Set<ResourceLocation> getKeys() {
+        return Sets.union(keys.keySet(), stored.keySet());
+    }
+
+    @Override
+    public Optional<MemoryKey> getKey(ResourceLocation keyId) {
+        MemoryKeyImpl key = keys.get(keyId);
+        if (key != null) return Optional.of(key);
+        StoredKey storedKey = stored.get(keyId);
+        return storedKey != null ? storedKey.get().map(MemoryKey.class::cast) : Optional.empty();
+    }
+}
@@ -0,0 +1,55 @@
+package red.jackf.chesttracker.impl.memory;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.api.memory.MemoryBankTransaction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records changes made during a batch, grouped by memory key so that each key is only looked up once when applied.
+ */
+public class MemoryBankTransactionImpl implements MemoryBankTransaction {
+    private final Map<ResourceLocation, List<Operation>> operations = new LinkedHashMap<>();
+
+    @Override
+    public void addMemory(ResourceLocation keyId, BlockPos location, Memory memory) {
+        this.forKey(keyId).add(new Operation(location, memory));
+    }
+
+    @Override
+    public void removeMemory(ResourceLocation keyId, BlockPos location) {
+        this.forKey(keyId).add(new Operation(location, null));
+    }
+
+    private List<Operation> forKey(ResourceLocation keyId) {
+        List<Operation> list = this.operations.get(keyId);
+        if (list == null) {
+            list = new ArrayList<>();
+            this.operations.put(keyId, list);
+        }
+        return list;
+    }
+
+    /**
+     * @return Recorded operations for each key, in the order they were made.
+     */
+    public Map<ResourceLocation, List<Operation>> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param position Position to add or remove a memory at.
+     * @param memory   Memory to add, or null to remove.
+     */
+    public record Operation(BlockPos position, @Nullable Memory memory) {
+        public boolean isAdd() {
+            return memory != null;
+        }
+    }
+}
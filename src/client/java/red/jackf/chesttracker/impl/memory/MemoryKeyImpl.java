@@ -1,64 +1,260 @@
 package red.jackf.chesttracker.impl.memory;
 
-import com.mojang.serialization.Codec;
+import com.mojang.serialization.*;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.api.memory.Memory;
 import red.jackf.chesttracker.api.memory.MemoryKey;
 import red.jackf.chesttracker.api.memory.counting.CountingPredicate;
 import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
 import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.key.BlockPosMapView;
+import red.jackf.chesttracker.impl.memory.key.ItemCounts;
+import red.jackf.chesttracker.impl.memory.key.ItemIndex;
 import red.jackf.chesttracker.impl.memory.key.ManualMode;
 import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
 import red.jackf.chesttracker.impl.memory.key.SearchContext;
+import red.jackf.chesttracker.impl.memory.key.SectionIndex;
 import red.jackf.chesttracker.impl.util.ItemStacks;
 import red.jackf.chesttracker.impl.util.Misc;
 import red.jackf.chesttracker.impl.util.ModCodecs;
 import red.jackf.jackfredlib.api.base.codecs.JFLCodecs;
-import red.jackf.whereisit.api.SearchRequest;
 import red.jackf.whereisit.api.SearchResult;
 
 import java.util.*;
-
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A single key of a memory bank. Positions are stored as {@link BlockPos#asLong()} in primitive maps to keep per-memory
+ * overhead low; {@link BlockPos} keyed maps are returned as views over these.
+ */
 public class MemoryKeyImpl implements MemoryKey {
-    private final Map<BlockPos, Memory> memories = new HashMap<>();
+    private final Long2ObjectOpenHashMap<Memory> memories = new Long2ObjectOpenHashMap<>();
+    private final Map<BlockPos, Memory> memoriesView = BlockPosMapView.of(memories);
 
     /**
      * Cache of all memories with names; used for faster rendering.
      */
-    private final Map<BlockPos, Memory> namedMemories = new HashMap<>();
+    private final Long2ObjectOpenHashMap<Memory> namedMemories = new Long2ObjectOpenHashMap<>();
+    private final Map<BlockPos, Memory> namedMemoriesView = BlockPosMapView.of(namedMemories);
 
     /**
-     * Cache map of which positions are linked together (think double chests).
+     * Cache map of which positions are linked together (think double chests), to their root position.
      * Used for both memory lookup and blocklist
      */
-    private final Map<BlockPos, BlockPos> connected = new HashMap<>();
+    private final Long2LongOpenHashMap connected = new Long2LongOpenHashMap();
+
+    /**
+     * Reverse of {@link #connected}; root positions to the positions linked to them when they were added. Lets a memory
+     * be unlinked without scanning every connection.
+     */
+    private final Long2ObjectOpenHashMap<long[]> children = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Root positions of all memories by chunk section, for range queries.
+     */
+    private final SectionIndex sections = new SectionIndex();
+
+    /**
+     * Root positions of {@link #namedMemories} by chunk section, so rendering names only looks at named memories.
+     */
+    private final SectionIndex namedSections = new SectionIndex();
 
-    private final Map<BlockPos, OverrideInfo> overrides = new HashMap<>();
+    /**
+     * Root positions of all memories by the item variants they contain, for searching. Built on the first search so
+     * that loading a key doesn't decode every memory's items, then kept up to date.
+     */
+    private @Nullable ItemIndex itemIndex = null;
+
+    /**
+     * Total of each item in this key by container, for the unfiltered item list. Built when first needed, as with
+     * {@link #itemIndex}.
+     */
+    private @Nullable ItemCounts itemCounts = null;
+
+    private final Long2ObjectOpenHashMap<OverrideInfo> overrides = new Long2ObjectOpenHashMap<>();
+    private final Map<BlockPos, OverrideInfo> overridesView = BlockPosMapView.mutable(overrides);
     private MemoryBankImpl memoryBank = null;
 
-    public MemoryKeyImpl(Map<BlockPos, Memory> memories, Map<BlockPos, OverrideInfo> overrides) {
-        this.memories.putAll(memories);
+    /**
+     * Last read-only copy of this key given out, reused until this key next changes.
+     */
+    private @Nullable MemoryKeyImpl snapshot = null;
 
-        this.overrides.putAll(overrides);
+    /**
+     * Positions whose memory or override has changed since the last save. Used by incremental storage backends to
+     * only write what changed, instead of the whole key.
+     */
+    private final Set<BlockPos> changedPositions = new HashSet<>();
+    private boolean allChanged = false;
+
+    /**
+     * Memories as of the last save, at each root position whose memory has changed since; null where there was no
+     * memory. Lets a save record history without reading back what it is replacing.
+     */
+    private final Long2ObjectOpenHashMap<Memory> savedMemories = new Long2ObjectOpenHashMap<>();
+
+    public MemoryKeyImpl(Map<BlockPos, Memory> memories, Map<BlockPos, OverrideInfo> overrides) {
+        this.memories.ensureCapacity(memories.size());
+        overrides.forEach((pos, override) -> this.overrides.put(pos.asLong(), override));
 
         for (Map.Entry<BlockPos, Memory> entry : memories.entrySet()) {
-            BlockPos pos = entry.getKey();
+            long pos = entry.getKey().asLong();
             Memory memory = entry.getValue();
             memory.populate(this, entry.getKey());
-            if (memory.hasCustomName())
-                this.namedMemories.put(entry.getKey(), memory);
-            for (BlockPos otherPosition : memory.otherPositions())
-                this.connected.put(otherPosition, entry.getKey());
+            this.memories.put(pos, memory);
+            this.sections.add(pos);
+            updateNamed(pos, memory);
+            connect(pos, memory);
         }
     }
 
     public MemoryKeyImpl() {}
 
-    protected void setMemoryBank(MemoryBankImpl bank) {
+    /**
+     * Creates a copy of this key for use off-thread, such as for saving. Memories are shared with this key and are not
+     * re-populated; overrides are copied as they may be modified in place.
+     *
+     * @return A copy of this memory key, not attached to any memory bank.
+     */
+    public MemoryKeyImpl copy() {
+        MemoryKeyImpl copy = new MemoryKeyImpl();
+        copy.memories.putAll(this.memories);
+        copy.namedMemories.putAll(this.namedMemories);
+        copy.connected.putAll(this.connected);
+        copy.children.putAll(this.children);
+        copy.sections.addAll(this.sections);
+        copy.namedSections.addAll(this.namedSections);
+        this.overrides.forEach((pos, override) -> copy.overrides.put(pos, override.copy()));
+        copy.changedPositions.addAll(this.changedPositions);
+        copy.allChanged = this.allChanged;
+        copy.savedMemories.putAll(this.savedMemories);
+        return copy;
+    }
+
+    /////////////////////
+    // CHANGE TRACKING //
+    /////////////////////
+
+    /**
+     * Marks a position's memory or override as changed since the last save.
+     *
+     * @param pos Position that was changed. For memories, this is the root position.
+     */
+    public void markChanged(BlockPos pos) {
+        this.changedPositions.add(pos);
+        this.snapshot = null;
+    }
+
+    /**
+     * Marks this whole key as changed, for example if this key was newly created or replaced.
+     */
+    public void markAllChanged() {
+        this.allChanged = true;
+        this.snapshot = null;
+    }
+
+    /**
+     * Merges the changes from another copy of this key, such as a snapshot that failed to save.
+     */
+    public void mergeChanged(MemoryKeyImpl other) {
+        this.changedPositions.addAll(other.changedPositions);
+        this.allChanged |= other.allChanged;
+        // the other copy's saved memories are older, so replace any recorded since
+        this.savedMemories.putAll(other.savedMemories);
+    }
+
+    /**
+     * Marks this key as replacing a removed key of the same ID since the last save, so that the removed key's
+     * memories are treated as this key's saved state.
+     *
+     * @param removed Key that was removed.
+     */
+    public void mergeReplaced(MemoryKeyImpl removed) {
+        this.markAllChanged();
+        this.savedMemories.putAll(removed.savedState());
+    }
+
+    public Set<BlockPos> getChangedPositions() {
+        return Collections.unmodifiableSet(this.changedPositions);
+    }
+
+    public boolean isAllChanged() {
+        return this.allChanged;
+    }
+
+    public void clearChanged() {
+        this.changedPositions.clear();
+        this.allChanged = false;
+        this.savedMemories.clear();
+    }
+
+    /**
+     * Returns what this key held at the last save, at each root position whose memory has changed since. Used to
+     * record save history.
+     *
+     * @return Map of positions to their memory as of the last save, or to null if there was none.
+     */
+    public Map<BlockPos, Memory> getSavedMemories() {
+        return BlockPosMapView.of(this.savedMemories);
+    }
+
+    /**
+     * @return All memories in this key as of the last save, for recording history when this key is removed.
+     */
+    public Map<BlockPos, Memory> getSavedState() {
+        return BlockPosMapView.of(savedState());
+    }
+
+    private Long2ObjectOpenHashMap<Memory> savedState() {
+        Long2ObjectOpenHashMap<Memory> state = new Long2ObjectOpenHashMap<>(this.memories);
+        for (Long2ObjectMap.Entry<Memory> entry : Long2ObjectMaps.fastIterable(this.savedMemories)) {
+            if (entry.getValue() == null) state.remove(entry.getLongKey());
+            else state.put(entry.getLongKey(), entry.getValue());
+        }
+        return state;
+    }
+
+    // only the first change after each save is kept, as that is what the save replaces
+    private void recordSaved(long root, @Nullable Memory previous) {
+        if (!this.savedMemories.containsKey(root)) this.savedMemories.put(root, previous);
+    }
+
+    /**
+     * Returns a read-only copy of this key that can be read from other threads. The copy is reused until this key next
+     * changes, so repeated calls without changes don't copy anything. Must be called on the client thread.
+     *
+     * @return A copy of this key as it is now, not attached to any memory bank. Must not be modified.
+     */
+    public MemoryKeyImpl snapshot() {
+        if (this.snapshot == null) this.snapshot = this.copy();
+        return this.snapshot;
+    }
+
+    /**
+     * Attaches this key to the live memory bank it belongs to, switching its memories to the bank's shared item
+     * prototypes. Only called for keys whose memories aren't shared with another key, such as keys joining a live bank
+     * or read straight into a bank snapshot; not for copies such as save snapshots.
+     */
+    protected void attach(MemoryBankImpl bank) {
         this.memoryBank = bank;
+        for (Memory memory : this.memories.values())
+            internStacks(memory);
+    }
+
+    private void internStacks(Memory memory) {
+        memory.internStacks(this.memoryBank.getStackInterner());
     }
 
     public MemoryBankImpl getMemoryBank() {
@@ -70,29 +266,87 @@ public class MemoryKeyImpl implements MemoryKey {
     }
 
     public Map<BlockPos, Memory> getMemories() {
-        return this.memories;
+        return this.memoriesView;
     }
 
     public Map<BlockPos, Memory> getNamedMemories() {
-        return this.namedMemories;
+        return this.namedMemoriesView;
     }
 
+    /**
+     * @return A mutable view of this key's overrides.
+     */
     public Map<BlockPos, OverrideInfo> overrides() {
-        return this.overrides;
+        return this.overridesView;
+    }
+
+    private void connect(long root, Memory memory) {
+        List<BlockPos> otherPositions = memory.otherPositions();
+        if (otherPositions.isEmpty()) return;
+        long[] linked = new long[otherPositions.size()];
+        for (int i = 0; i < linked.length; i++) {
+            linked[i] = otherPositions.get(i).asLong();
+            this.connected.put(linked[i], root);
+        }
+        this.children.put(root, linked);
+    }
+
+    // only removes links still pointing at this root, in case another memory has since claimed them
+    private void disconnect(long root) {
+        long[] linked = this.children.remove(root);
+        if (linked == null) return;
+        for (long other : linked)
+            if (this.connected.containsKey(other) && this.connected.get(other) == root)
+                this.connected.remove(other);
+    }
+
+    private void indexItems(long pos, Memory memory) {
+        if (this.itemIndex != null) this.itemIndex.add(pos, memory);
+        if (this.itemCounts != null) this.itemCounts.add(memory);
+    }
+
+    private void unindexItems(long pos, @Nullable Memory memory) {
+        if (memory == null) return;
+        if (this.itemIndex != null) this.itemIndex.remove(pos, memory);
+        if (this.itemCounts != null) this.itemCounts.remove(memory);
+    }
+
+    // synchronized as snapshots may be searched from several threads at once
+    private synchronized ItemIndex getItemIndex() {
+        if (this.itemIndex == null) {
+            this.itemIndex = new ItemIndex();
+            for (Long2ObjectMap.Entry<Memory> entry : Long2ObjectMaps.fastIterable(this.memories))
+                this.itemIndex.add(entry.getLongKey(), entry.getValue());
+        }
+        return this.itemIndex;
+    }
+
+    private synchronized ItemCounts getItemCounts() {
+        if (this.itemCounts == null) {
+            this.itemCounts = new ItemCounts();
+            for (Memory memory : this.memories.values())
+                this.itemCounts.add(memory);
+        }
+        return this.itemCounts;
+    }
+
+    private long getRoot(long pos) {
+        return this.connected.getOrDefault(pos, pos);
     }
 
     public void add(BlockPos position, Memory memory) {
         // if blocked remove instead
-        OverrideInfo override = this.overrides.get(position);
+        OverrideInfo override = this.overrides.get(position.asLong());
         ManualMode manualMode = override != null ? override.getManualMode() : ManualMode.DEFAULT;
         boolean shouldAdd = manualMode == ManualMode.REMEMBER // force remember
                 || manualMode == ManualMode.DEFAULT && !this.memoryBank.getMetadata().getFilteringSettings().manualMode // no override but default is remember
-                || this.memories.containsKey(position); // already a memory
+                || this.memories.containsKey(position.asLong()); // already a memory
         if (!shouldAdd) {
             return;
         }
 
         memory.populate(this, position);
+        internStacks(memory);
 
         // if no name and we require names, remove instead
         if (this.memoryBank.getMetadata().getFilteringSettings().onlyRememberNamed && !memory.hasCustomName()) {
@@ -112,88 +366,284 @@ public class MemoryKeyImpl implements MemoryKey {
         // Shuffle along an override from an existing position thats now connected to the original
         OverrideInfo existingOverride = null;
         for (BlockPos blockPos : memory.otherPositions()) {
-            if (this.overrides.containsKey(blockPos))
-                existingOverride = this.overrides.get(blockPos);
+            OverrideInfo otherOverride = this.overrides.get(blockPos.asLong());
+            if (otherOverride != null)
+                existingOverride = otherOverride;
             remove(blockPos);
         }
 
-        if (existingOverride != null)
-            this.overrides.put(position, existingOverride);
+        long pos = position.asLong();
+        if (existingOverride != null) {
+            this.overrides.put(pos, existingOverride);
+            this.markChanged(position);
+        }
 
-        this.memories.put(position, memory);
-        if (memory.hasCustomName())
-            this.namedMemories.put(position, memory);
-        for (BlockPos otherPosition : memory.otherPositions())
-            this.connected.put(otherPosition, position);
+        Memory previous = this.memories.put(pos, memory);
+        recordSaved(pos, previous);
+        unindexItems(pos, previous);
+        indexItems(pos, memory);
+        this.sections.add(pos);
+        disconnect(pos);
+        this.markChanged(position);
+        updateNamed(pos, memory);
+        connect(pos, memory);
     }
 
     public boolean remove(BlockPos position) {
-        BlockPos rootPosition = this.connected.getOrDefault(position, position);
-        boolean success = this.memories.remove(rootPosition) != null;
-        this.namedMemories.remove(rootPosition);
-        //noinspection StatementWithEmptyBody
-        while (this.connected.values().remove(rootPosition));
+        long pos = position.asLong();
+        long root = getRoot(pos);
+        Memory removed = this.memories.remove(root);
+        if (removed != null) recordSaved(root, removed);
+        unindexItems(root, removed);
+        this.sections.remove(root);
+        updateNamed(root, null);
+        disconnect(root);
+
+        this.overrides.remove(pos);
+        this.markChanged(root == pos ? position : BlockPos.of(root));
+        this.markChanged(position);
+        return removed != null;
+    }
+
+    /**
+     * Removes the memories at each of the given positions, along with any override at those positions.
+     *
+     * @param positions Positions to remove. These may be root or connected positions.
+     * @return How many memories were removed.
+     */
+    public int removeAll(Collection<BlockPos> positions) {
+        int removed = 0;
+        for (BlockPos position : positions)
+            if (remove(position)) removed++;
+        return removed;
+    }
+
+    /**
+     * Removes all memories matching a predicate, along with any override at their root positions. Runs in a single
+     * pass over this key.
+     *
+     * @param predicate Predicate that memories to remove pass.
+     * @return How many memories were removed.
+     */
+    public int removeIf(CountingPredicate predicate) {
+        int removed = 0;
+        var iterator = Long2ObjectMaps.fastIterator(this.memories);
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<Memory> entry = iterator.next();
+            BlockPos position = BlockPos.of(entry.getLongKey());
+            // read before removing, as the fast iterator's entry reads through to the map
+            Memory memory = entry.getValue();
+            if (!predicate.test(position, memory)) continue;
+
+            long root = entry.getLongKey();
+            recordSaved(root, memory);
+            iterator.remove();
+            unindexItems(root, memory);
+            this.sections.remove(root);
+            updateNamed(root, null);
+            disconnect(root);
+            this.overrides.remove(root);
+            this.markChanged(position);
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Sets or removes the memory at a position directly, skipping any filtering. Used when replaying stored changes.
+     *
+     * @param position Root position of the memory.
+     * @param memory   Memory to place, or null to remove the existing memory.
+     */
+    public void restoreMemory(BlockPos position, @Nullable Memory memory) {
+        this.snapshot = null;
+        long pos = position.asLong();
+        updateNamed(pos, null);
+
+        if (memory == null) {
+            unindexItems(pos, this.memories.remove(pos));
+            this.sections.remove(pos);
+            disconnect(pos);
+            return;
+        }
+
+        // interned once this key is attached to its bank
+        memory.populate(this, position);
+        unindexItems(pos, this.memories.put(pos, memory));
+        indexItems(pos, memory);
+        this.sections.add(pos);
+        disconnect(pos);
+        updateNamed(pos, memory);
+        connect(pos, memory);
+    }
+
+    private void updateNamed(long pos, @Nullable Memory memory) {
+        if (memory != null && memory.hasCustomName()) {
+            this.namedMemories.put(pos, memory);
+            this.namedSections.add(pos);
+        } else if (this.namedMemories.remove(pos) != null) {
+            this.namedSections.remove(pos);
+        }
+    }
 
-        this.overrides.remove(position);
-        return success;
+    /**
+     * Sets or removes the override at a position directly. Used when replaying stored changes.
+     *
+     * @param position Position of the override.
+     * @param override Override to place, or null to remove the existing override.
+     */
+    public void restoreOverride(BlockPos position, @Nullable OverrideInfo override) {
+        this.snapshot = null;
+        if (override == null) {
+            this.overrides.remove(position.asLong());
+        } else {
+            this.overrides.put(position.asLong(), override);
+        }
     }
 
     public Optional<Memory> get(BlockPos pos) {
-        return Optional.ofNullable(this.memories.get(this.connected.getOrDefault(pos, pos)));
+        return Optional.ofNullable(this.memories.get(getRoot(pos.asLong())));
     }
 
     @Override
     public List<ItemStack> getCounts(CountingPredicate predicate, StackMergeMode stackMergeMode) {
+        return countStacks(this.memoriesView.entrySet().stream().filter(predicate), stackMergeMode);
+    }
+
+    /**
+     * Returns the total of each item in memories from matching containers, as with {@link StackMergeMode#ALL}. Uses
+     * running totals, so doesn't look at individual memories.
+     *
+     * @param containerFilter Filter for which containers to count, given each memory's {@link Memory#container()}.
+     * @return A stack for each distinct item, with its count set to the total.
+     */
+    public List<ItemStack> getTotalCounts(Predicate<Optional<Block>> containerFilter) {
+        return getItemCounts().get(containerFilter);
+    }
+
+    /**
+     * Returns a list of stacks in memories within a range of a point, matching a filter. Only memories near the point
+     * are checked.
+     *
+     * @param origin         Point to count around.
+     * @param radius         Radius around the point to count memories within.
+     * @param predicate      Filter that memories must pass to be counted.
+     * @param stackMergeMode How to merge identical stacks.
+     * @return Stacks in matching memories.
+     * @see CountingPredicate#within(Vec3, double)
+     */
+    public List<ItemStack> getCountsWithin(Vec3 origin, double radius, CountingPredicate predicate, StackMergeMode stackMergeMode) {
+        List<Map.Entry<BlockPos, Memory>> entries = new ArrayList<>();
+        forEachWithin(origin, radius, (pos, memory) -> {
+            if (predicate.test(pos, memory)) entries.add(Map.entry(pos, memory));
+        });
+        return countStacks(entries.stream(), stackMergeMode);
+    }
+
+    private static List<ItemStack> countStacks(Stream<Map.Entry<BlockPos, Memory>> entries, StackMergeMode stackMergeMode) {
         return switch (stackMergeMode) {
-            case ALL -> ItemStacks.flattenStacks(this.memories.entrySet().stream()
-                    .filter(predicate)
-                    .flatMap(data -> data.getValue().items().stream())
+            case ALL -> ItemStacks.flattenMemories(entries
+                    .map(Map.Entry::getValue)
                     .toList(), false);
-            case WITHIN_CONTAINERS -> this.memories.entrySet().stream()
-                    .filter(predicate)
-                    .flatMap(data -> ItemStacks.flattenStacks(data.getValue().items(), false).stream())
+            case WITHIN_CONTAINERS -> entries
+                    .flatMap(data -> ItemStacks.flattenMemories(List.of(data.getValue()), false).stream())
                     .toList();
-            case NEVER -> this.memories.entrySet().stream()
-                    .filter(predicate)
+            case NEVER -> entries
                     .flatMap(data -> data.getValue().items().stream())
                     .toList();
         };
     }
 
+    /**
+     * Runs an action on each memory with its center strictly within a range of a point, as with
+     * {@link CountingPredicate#within(Vec3, double)}. Only memories in chunk sections near the point are checked.
+     *
+     * @param origin Point to search around.
+     * @param radius Radius around the point.
+     * @param action Action to run with each memory's root position and the memory. Must not modify this key.
+     */
+    public void forEachWithin(Vec3 origin, double radius, BiConsumer<BlockPos, Memory> action) {
+        forEachWithin(this.sections, origin, radius, action);
+    }
+
+    /**
+     * Runs an action on each memory with a custom name within a range of a point, as with
+     * {@link #forEachWithin(Vec3, double, BiConsumer)}. Only named memories are checked.
+     *
+     * @param origin Point to search around.
+     * @param radius Radius around the point.
+     * @param action Action to run with each named memory's root position and the memory. Must not modify this key.
+     */
+    public void forEachNamedWithin(Vec3 origin, double radius, BiConsumer<BlockPos, Memory> action) {
+        forEachWithin(this.namedSections, origin, radius, action);
+    }
+
+    private void forEachWithin(SectionIndex index, Vec3 origin, double radius, BiConsumer<BlockPos, Memory> action) {
+        final double radiusSq = radius * radius;
+        index.forEachNear(origin, radius, packed -> {
+            if (distToCenterSqr(packed, origin) < radiusSq)
+                action.accept(BlockPos.of(packed), this.memories.get(packed));
+        });
+    }
+
+    // same as BlockPos#distToCenterSqr, without creating a position for every memory
+    private static double distToCenterSqr(long packed, Vec3 point) {
+        double dx = BlockPos.getX(packed) + 0.5 - point.x;
+        double dy = BlockPos.getY(packed) + 0.5 - point.y;
+        double dz = BlockPos.getZ(packed) + 0.5 - point.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
     public List<SearchResult> doSearch(SearchContext context) {
         List<SearchResult> results = new ArrayList<>();
-        final long rangeSquared = (long) context.metadata().getSearchSettings().searchRange
-                                * (long) context.metadata().getSearchSettings().searchRange;
+        final int searchRange = context.metadata().getSearchSettings().searchRange;
+        final long rangeSquared = (long) searchRange * (long) searchRange;
+
+        // only memories containing a matching item variant are looked at
+        final ItemIndex.Matches matches = getItemIndex().match(context.request());
+        if (matches.positions().isEmpty()) return results;
+
+        final Vec3 root = context.rootPosition();
+        matches.positions().forEach(packed -> {
+            if (distToCenterSqr(packed, root) > rangeSquared) return;
 
-        for (Map.Entry<BlockPos, Memory> entry : this.memories.entrySet()) {
-            if (entry.getKey().distToCenterSqr(context.rootPosition()) > rangeSquared) continue;
-            Optional<ItemStack> matchingItem = entry.getValue().items().stream()
-                    .filter(stack -> SearchRequest.check(stack, context.request()))
-                    .findFirst();
-            if (matchingItem.isEmpty()) continue;
+            Memory memory = this.memories.get(packed);
+            CompactStacks stacks = memory.stacks();
+            ItemStack matchingItem = null;
+            for (int i = 0; i < stacks.size() && matchingItem == null; i++)
+                if (matches.variants().contains(stacks.prototype(i))) matchingItem = stacks.get(i);
+            if (matchingItem == null) return;
 
-            SearchResult.Builder result = SearchResult.builder(entry.getKey())
-                    .item(matchingItem.get())
-                    .otherPositions(entry.getValue().otherPositions());
+            BlockPos pos = BlockPos.of(packed);
+            SearchResult.Builder result = SearchResult.builder(pos)
+                    .item(matchingItem)
+                    .otherPositions(memory.otherPositions());
 
             if (context.metadata().getCompatibilitySettings().displayContainerNames)
                 result.name(
-                        entry.getValue().renderName(),
-                        Misc.getAverageOffsetFrom(entry.getKey(), entry.getValue().otherPositions()).add(0, 1, 0)
+                        memory.renderName(),
+                        Misc.getAverageOffsetFrom(pos, memory.otherPositions()).add(0, 1, 0)
                 );
 
             results.add(result.build());
-        }
+        });
 
         return results;
     }
 
     public static class Codecs {
+        public static final String PALETTE = "palette";
+
         private static final Codec<Map<BlockPos, Memory>> MEMORY_MAP = Codec.unboundedMap(
                 ModCodecs.BLOCK_POS_STRING,
                 Memory.CODEC
         );
 
+        public static final Codec<Map<BlockPos, OverrideInfo>> OVERRIDES_MAP = Codec.unboundedMap(
+                ModCodecs.BLOCK_POS_STRING,
+                OverrideInfo.CODEC
+        );
+
         // v2.3.3 and below
         // just a map of positions to memories
         private static final Codec<MemoryKeyImpl> V2_3_3 = Types.wrapInFixer(Types.MEMORY_DATA_2_3_3,
@@ -201,20 +651,47 @@ public class MemoryKeyImpl implements MemoryKey {
                 3700); // Data Version 3700 -> Minecraft 1.20.4
 
         // v2.4.0 and up
-        // moved to record; adds blocked set
+        // moved to record; adds blocked set. items are stored in a per-key palette, with memories saved before
+        // palettes still readable
+        private static final MapCodec<MemoryKeyImpl> PALETTED = new MapCodec<>() {
+            @Override
+            public <T> Stream<T> keys(DynamicOps<T> ops) {
+                return Stream.of(PALETTE, "memories", "overrides").map(ops::createString);
+            }
+
+            @Override
+            public <T> DataResult<MemoryKeyImpl> decode(DynamicOps<T> ops, MapLike<T> input) {
+                return ItemPalette.CODEC.optionalFieldOf(PALETTE, ItemPalette.empty()).decode(ops, input)
+                        .flatMap(palette -> fields(palette).decode(ops, input));
+            }
+
+            @Override
+            public <T> RecordBuilder<T> encode(MemoryKeyImpl input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+                ItemPalette palette = ItemPalette.collect(input.getMemories().values());
+                return fields(palette).encode(input, ops, ItemPalette.CODEC.fieldOf(PALETTE).encode(palette, ops, prefix));
+            }
+        };
+
         private static final Codec<MemoryKeyImpl> LATEST = ModCodecs.predicate( // we wrap in predicate because otherwise DFU dumps the whole bank into the console even though its fine
                 dyn -> dyn.get("memories").result().isPresent(),
                 Types.wrapInFixer(
                         Types.MEMORY_DATA,
-                        RecordCodecBuilder.create(
-                        instance -> instance.group(
-                                MEMORY_MAP.fieldOf("memories").forGetter(MemoryKeyImpl::getMemories),
-                                Codec.unboundedMap(ModCodecs.BLOCK_POS_STRING, OverrideInfo.CODEC).fieldOf("overrides").forGetter(MemoryKeyImpl::overrides)
-                        ).apply(instance, MemoryKeyImpl::new)),
+                        PALETTED.codec(),
                         3700 // Data Version 3700 -> Minecraft 1.20.4
                 )
         );
 
+        /**
+         * Returns a codec for a memory key's memories and overrides, with items referencing the given palette.
+         */
+        public static MapCodec<MemoryKeyImpl> fields(ItemPalette palette) {
+            return RecordCodecBuilder.mapCodec(instance -> instance.group(
+                    Codec.unboundedMap(ModCodecs.BLOCK_POS_STRING, Memory.codec(palette.itemsCodec())).fieldOf("memories")
+                            .forGetter(MemoryKeyImpl::getMemories),
+                    OVERRIDES_MAP.fieldOf("overrides").forGetter(MemoryKeyImpl::overrides)
+            ).apply(instance, MemoryKeyImpl::new));
+        }
+
         public static final Codec<MemoryKeyImpl> MAIN = JFLCodecs.firstInList(LATEST, V2_3_3);
     }
 }
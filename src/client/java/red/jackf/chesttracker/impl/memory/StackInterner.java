@@ -0,0 +1,88 @@
+package red.jackf.chesttracker.impl.memory;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.minecraft.core.component.DataComponentPatch;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Pool of canonical item prototypes and component patches for a memory bank, so that identical items across all of
+ * the bank's memories share one instance instead of each being decoded separately.</p>
+ *
+ * <p>Entries are only weakly held, and are dropped once no memory uses them. Safe to use from any thread.</p>
+ */
+public class StackInterner {
+    private final Interner<DataComponentPatch> patches = Interners.newWeakInterner();
+    private final Map<Key, PrototypeReference> prototypes = new HashMap<>();
+    private final ReferenceQueue<ItemStack> collected = new ReferenceQueue<>();
+
+    /**
+     * @return The canonical instance of a component patch.
+     */
+    public DataComponentPatch intern(DataComponentPatch patch) {
+        return patch.isEmpty() ? DataComponentPatch.EMPTY : patches.intern(patch);
+    }
+
+    /**
+     * Returns the shared prototype for a stack's item and components.
+     *
+     * @param stack Stack to get a prototype for. Not modified or kept.
+     * @return A stack with a count of 1 and the same item and components. Must not be modified.
+     */
+    public synchronized ItemStack prototype(ItemStack stack) {
+        expungeCollected();
+        DataComponentPatch patch = intern(stack.getComponentsPatch());
+        Key key = new Key(stack.getItem(), patch);
+        PrototypeReference reference = prototypes.get(key);
+        ItemStack prototype = reference != null ? reference.get() : null;
+        if (prototype == null) {
+            prototype = new ItemStack(stack.getItemHolder(), 1, patch);
+            prototypes.put(key, new PrototypeReference(prototype, key, collected));
+        }
+        return prototype;
+    }
+
+    /**
+     * @return A list with the same items and counts, using this pool's prototypes.
+     */
+    public CompactStacks intern(CompactStacks stacks) {
+        return stacks.withPrototypes(this::prototype);
+    }
+
+    private void expungeCollected() {
+        Reference<? extends ItemStack> reference;
+        while ((reference = collected.poll()) != null) {
+            PrototypeReference prototype = (PrototypeReference) reference;
+            prototypes.remove(prototype.key, prototype);
+        }
+    }
+
+    // patches are interned before making a key, so they can be compared by reference
+    private record Key(Item item, DataComponentPatch patch) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && item == other.item && patch == other.patch;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * item.hashCode() + System.identityHashCode(patch);
+        }
+    }
+
+    private static class PrototypeReference extends WeakReference<ItemStack> {
+        private final Key key;
+
+        private PrototypeReference(ItemStack prototype, Key key, ReferenceQueue<ItemStack> queue) {
+            super(prototype, queue);
+            this.key = key;
+        }
+    }
+}
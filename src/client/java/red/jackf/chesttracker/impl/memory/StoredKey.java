@@ -0,0 +1,55 @@
+package red.jackf.chesttracker.impl.memory;
+
+import net.minecraft.core.HolderLookup;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+
+/**
+ * <p>A key that wasn't loaded when a {@link MemoryBankSnapshotImpl snapshot} was taken. It is read from storage the
+ * first time the snapshot is asked for it, on whichever thread asks, and isn't added to the live bank.</p>
+ *
+ * <p>If the live bank loads the key first, it hands over a copy from before any changes are made to it, so the
+ * snapshot never sees changes made after it was taken.</p>
+ */
+final class StoredKey {
+    private final ResourceLocation keyId;
+    private final MemoryBankImpl.KeyLoader loader;
+    private final MemoryBankImpl bank;
+    private final @Nullable HolderLookup.Provider registries;
+    private boolean loaded = false;
+    private @Nullable MemoryKeyImpl key = null;
+
+    StoredKey(ResourceLocation keyId, MemoryBankImpl.KeyLoader loader, MemoryBankImpl bank, @Nullable HolderLookup.Provider registries) {
+        this.keyId = keyId;
+        this.loader = loader;
+        this.bank = bank;
+        this.registries = registries;
+    }
+
+    /**
+     * @return The key as it was when the snapshot was taken, loading it if needed, or an empty optional if it failed
+     * to load.
+     */
+    synchronized Optional<MemoryKeyImpl> get() {
+        if (!this.loaded) {
+            // not shared with any other key, so its items can go straight into the bank's pool
+            this.key = this.loader.load(this.keyId, this.registries).orElse(null);
+            if (this.key != null) this.key.attach(this.bank);
+            this.loaded = true;
+        }
+        return Optional.ofNullable(this.key);
+    }
+
+    /**
+     * Called on the client thread when the live bank loads this key, before it can be changed.
+     *
+     * @param copy Copy of the key as loaded, or null if it failed to load.
+     */
+    synchronized void complete(@Nullable MemoryKeyImpl copy) {
+        if (this.loaded) return;
+        this.key = copy;
+        this.loaded = true;
+    }
+}
@@ -0,0 +1,117 @@
+package red.jackf.chesttracker.impl.memory.key;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * <p>A {@link Map} view over a map keyed by {@link BlockPos#asLong()}, for APIs that expect block positions as keys.</p>
+ *
+ * <p>Lookups convert the given position to a long; iteration creates a position per entry. Changes go through to the
+ * backing map if the view is mutable.</p>
+ *
+ * @param <V> Type of value in the map.
+ */
+public class BlockPosMapView<V> extends AbstractMap<BlockPos, V> {
+    private final Long2ObjectMap<V> backing;
+    private final boolean mutable;
+    private @Nullable Set<Entry<BlockPos, V>> entrySet = null;
+
+    private BlockPosMapView(Long2ObjectMap<V> backing, boolean mutable) {
+        this.backing = backing;
+        this.mutable = mutable;
+    }
+
+    public static <V> Map<BlockPos, V> of(Long2ObjectMap<V> backing) {
+        return new BlockPosMapView<>(backing, false);
+    }
+
+    public static <V> Map<BlockPos, V> mutable(Long2ObjectMap<V> backing) {
+        return new BlockPosMapView<>(backing, true);
+    }
+
+    @Override
+    public int size() {
+        return backing.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return backing.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof BlockPos pos && backing.containsKey(pos.asLong());
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof BlockPos pos ? backing.get(pos.asLong()) : null;
+    }
+
+    @Override
+    public V put(BlockPos key, V value) {
+        checkMutable();
+        return backing.put(key.asLong(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        checkMutable();
+        return key instanceof BlockPos pos ? backing.remove(pos.asLong()) : null;
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        backing.clear();
+    }
+
+    @Override
+    public @NotNull Collection<V> values() {
+        return mutable ? backing.values() : Collections.unmodifiableCollection(backing.values());
+    }
+
+    @Override
+    public @NotNull Set<Entry<BlockPos, V>> entrySet() {
+        if (entrySet == null) entrySet = new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<Entry<BlockPos, V>> iterator() {
+                ObjectIterator<Long2ObjectMap.Entry<V>> iterator = backing.long2ObjectEntrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<BlockPos, V> next() {
+                        Long2ObjectMap.Entry<V> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(BlockPos.of(entry.getLongKey()), entry.getValue());
+                    }
+
+                    @Override
+                    public void remove() {
+                        checkMutable();
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return backing.size();
+            }
+        };
+        return entrySet;
+    }
+
+    private void checkMutable() {
+        if (!mutable) throw new UnsupportedOperationException("Read-only view");
+    }
+}
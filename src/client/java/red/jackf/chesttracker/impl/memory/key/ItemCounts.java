@@ -0,0 +1,81 @@
+package red.jackf.chesttracker.impl.memory.key;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.ItemStackLinkedSet;
+import net.minecraft.world.level.block.Block;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.api.memory.counting.StackMergeMode;
+import red.jackf.chesttracker.impl.memory.CompactStacks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * <p>Running totals of each item variant in a memory key, split by the container block they're in. Updated by the
+ * difference whenever a memory is added or removed.</p>
+ *
+ * <p>Used for the unfiltered {@link StackMergeMode#ALL} item list, so that it only depends on the number of distinct
+ * items rather than every stack in every memory.</p>
+ */
+public class ItemCounts {
+    private final Map<Optional<Block>, Object2IntOpenCustomHashMap<ItemStack>> byContainer = new HashMap<>();
+
+    public void add(Memory memory) {
+        Object2IntOpenCustomHashMap<ItemStack> counts = byContainer.get(memory.container());
+        if (counts == null) {
+            counts = new Object2IntOpenCustomHashMap<>(ItemStackLinkedSet.TYPE_AND_TAG);
+            byContainer.put(memory.container(), counts);
+        }
+        CompactStacks stacks = memory.stacks();
+        for (int i = 0; i < stacks.size(); i++)
+            counts.addTo(stacks.prototype(i), stacks.count(i));
+    }
+
+    public void remove(Memory memory) {
+        Object2IntOpenCustomHashMap<ItemStack> counts = byContainer.get(memory.container());
+        if (counts == null) return;
+        CompactStacks stacks = memory.stacks();
+        for (int i = 0; i < stacks.size(); i++)
+            if (counts.addTo(stacks.prototype(i), -stacks.count(i)) - stacks.count(i) <= 0)
+                counts.removeInt(stacks.prototype(i));
+        if (counts.isEmpty()) byContainer.remove(memory.container());
+    }
+
+    /**
+     * Gets the total of each item variant in memories from matching containers.
+     *
+     * @param containerFilter Filter for which containers to count, given each memory's {@link Memory#container()}.
+     * @return A new stack for each item variant, with the count set to its total.
+     */
+    public List<ItemStack> get(Predicate<Optional<Block>> containerFilter) {
+        Object2IntOpenCustomHashMap<ItemStack> totals = null;
+        boolean merged = false;
+        for (Map.Entry<Optional<Block>, Object2IntOpenCustomHashMap<ItemStack>> entry : byContainer.entrySet()) {
+            if (!containerFilter.test(entry.getKey())) continue;
+            if (totals == null) {
+                totals = entry.getValue();
+            } else {
+                // only copy once more than one container type needs merging
+                if (!merged) {
+                    totals = new Object2IntOpenCustomHashMap<>(totals, ItemStackLinkedSet.TYPE_AND_TAG);
+                    merged = true;
+                }
+                for (Object2IntMap.Entry<ItemStack> count : Object2IntMaps.fastIterable(entry.getValue()))
+                    totals.addTo(count.getKey(), count.getIntValue());
+            }
+        }
+        if (totals == null) return List.of();
+
+        List<ItemStack> stacks = new ArrayList<>(totals.size());
+        for (Object2IntMap.Entry<ItemStack> count : Object2IntMaps.fastIterable(totals))
+            stacks.add(count.getKey().copyWithCount(count.getIntValue()));
+        return stacks;
+    }
+}
@@ -0,0 +1,70 @@
+package red.jackf.chesttracker.impl.memory.key;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMaps;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenCustomHashSet;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.ItemStackLinkedSet;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.memory.CompactStacks;
+import red.jackf.whereisit.api.SearchRequest;
+
+import java.util.Set;
+
+/**
+ * <p>Inverted index from item variants (item and components) to the packed positions of memories containing them.</p>
+ *
+ * <p>Searches check each distinct variant once instead of every stack in every memory, which matters for storage
+ * setups where the same few items are spread over many containers.</p>
+ */
+public class ItemIndex {
+    private final Object2ObjectOpenCustomHashMap<ItemStack, LongSet> positions = new Object2ObjectOpenCustomHashMap<>(ItemStackLinkedSet.TYPE_AND_TAG);
+
+    public void add(long pos, Memory memory) {
+        CompactStacks stacks = memory.stacks();
+        for (int i = 0; i < stacks.size(); i++) {
+            LongSet containing = positions.get(stacks.prototype(i));
+            if (containing == null) {
+                containing = new LongOpenHashSet();
+                positions.put(stacks.prototype(i), containing);
+            }
+            containing.add(pos);
+        }
+    }
+
+    public void remove(long pos, Memory memory) {
+        CompactStacks stacks = memory.stacks();
+        for (int i = 0; i < stacks.size(); i++) {
+            LongSet containing = positions.get(stacks.prototype(i));
+            if (containing != null && containing.remove(pos) && containing.isEmpty())
+                positions.remove(stacks.prototype(i));
+        }
+    }
+
+    /**
+     * Finds all variants passing a search request, and the memories that contain them.
+     *
+     * @param request Request to check variants against.
+     * @return Matching variants and the positions of memories containing at least one of them.
+     */
+    public Matches match(SearchRequest request) {
+        Set<ItemStack> variants = new ObjectOpenCustomHashSet<>(ItemStackLinkedSet.TYPE_AND_TAG);
+        LongSet containing = new LongOpenHashSet();
+        for (Object2ObjectMap.Entry<ItemStack, LongSet> entry : Object2ObjectMaps.fastIterable(positions)) {
+            if (SearchRequest.check(entry.getKey(), request)) {
+                variants.add(entry.getKey());
+                containing.addAll(entry.getValue());
+            }
+        }
+        return new Matches(variants, containing);
+    }
+
+    /**
+     * @param variants  Variants that passed a search request.
+     * @param positions Packed positions of memories containing any of the variants.
+     */
+    public record Matches(Set<ItemStack> variants, LongSet positions) {}
+}
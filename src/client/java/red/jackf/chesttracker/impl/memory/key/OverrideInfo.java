@@ -26,6 +26,10 @@ public class OverrideInfo {
         this.customName = customName;
     }
 
+    public OverrideInfo copy() {
+        return new OverrideInfo(this.manualMode, this.customName);
+    }
+
     public boolean shouldKeep() {
         return this.manualMode != ManualMode.DEFAULT || this.customName != null;
     }
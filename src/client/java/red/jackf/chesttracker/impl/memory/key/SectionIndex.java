@@ -0,0 +1,137 @@
+package red.jackf.chesttracker.impl.memory.key;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.function.LongConsumer;
+
+/**
+ * <p>Spatial index of packed block positions, bucketed by the 16x16x16 chunk section they're in.</p>
+ *
+ * <p>Range queries only visit sections overlapping the query's bounds, so their cost depends on how many positions are
+ * nearby rather than in the whole index. Queries are conservative: positions in a visited section are returned even
+ * if slightly outside the range, so callers should do their own exact check.</p>
+ */
+public class SectionIndex {
+    private static final int MAX_HORIZONTAL = 1 << 25;
+    private static final int MAX_VERTICAL = 1 << 11;
+
+    private final Long2ObjectOpenHashMap<LongSet> sections = new Long2ObjectOpenHashMap<>();
+
+    public void add(long pos) {
+        getOrCreateBucket(sectionOf(pos)).add(pos);
+    }
+
+    public void remove(long pos) {
+        long section = sectionOf(pos);
+        LongSet bucket = sections.get(section);
+        if (bucket != null && bucket.remove(pos) && bucket.isEmpty())
+            sections.remove(section);
+    }
+
+    public void clear() {
+        sections.clear();
+    }
+
+    public void addAll(SectionIndex other) {
+        for (Long2ObjectMap.Entry<LongSet> entry : Long2ObjectMaps.fastIterable(other.sections))
+            getOrCreateBucket(entry.getLongKey()).addAll(entry.getValue());
+    }
+
+    private LongSet getOrCreateBucket(long section) {
+        LongSet bucket = sections.get(section);
+        if (bucket == null) {
+            bucket = new LongOpenHashSet();
+            sections.put(section, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Visits all positions in sections overlapping a sphere.
+     *
+     * @param origin   Center of the sphere.
+     * @param radius   Radius of the sphere; may be very large, such as {@link Integer#MAX_VALUE}.
+     * @param consumer Called with each packed position near the sphere.
+     */
+    public void forEachNear(Vec3 origin, double radius, LongConsumer consumer) {
+        final double radiusSq = radius * radius;
+        forEachInBox(origin.x - radius, origin.y - radius, origin.z - radius,
+                     origin.x + radius, origin.y + radius, origin.z + radius,
+                     (section, bucket) -> {
+                         if (distanceToSectionSqr(section, origin) <= radiusSq) bucket.forEach(consumer);
+                     });
+    }
+
+    /**
+     * Visits all positions in sections overlapping a box of block coordinates.
+     *
+     * @param consumer Called with each packed position near the box.
+     */
+    public void forEachNear(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, LongConsumer consumer) {
+        forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (section, bucket) -> bucket.forEach(consumer));
+    }
+
+    private void forEachInBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, SectionConsumer consumer) {
+        if (sections.isEmpty()) return;
+        final int minSX = toSection(minX, MAX_HORIZONTAL), minSY = toSection(minY, MAX_VERTICAL), minSZ = toSection(minZ, MAX_HORIZONTAL);
+        final int maxSX = toSection(maxX, MAX_HORIZONTAL), maxSY = toSection(maxY, MAX_VERTICAL), maxSZ = toSection(maxZ, MAX_HORIZONTAL);
+
+        // for large ranges, checking each occupied section is cheaper than checking each section in range
+        double volume = (maxSX - minSX + 1.0) * (maxSY - minSY + 1.0) * (maxSZ - minSZ + 1.0);
+        if (volume > sections.size()) {
+            for (Long2ObjectMap.Entry<LongSet> entry : Long2ObjectMaps.fastIterable(sections)) {
+                long section = entry.getLongKey();
+                int x = SectionPos.x(section), y = SectionPos.y(section), z = SectionPos.z(section);
+                if (x >= minSX && x <= maxSX && y >= minSY && y <= maxSY && z >= minSZ && z <= maxSZ)
+                    consumer.accept(section, entry.getValue());
+            }
+        } else {
+            for (int x = minSX; x <= maxSX; x++) {
+                for (int y = minSY; y <= maxSY; y++) {
+                    for (int z = minSZ; z <= maxSZ; z++) {
+                        long section = SectionPos.asLong(x, y, z);
+                        LongSet bucket = sections.get(section);
+                        if (bucket != null) consumer.accept(section, bucket);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long sectionOf(long pos) {
+        return SectionPos.asLong(SectionPos.blockToSectionCoord(BlockPos.getX(pos)),
+                                 SectionPos.blockToSectionCoord(BlockPos.getY(pos)),
+                                 SectionPos.blockToSectionCoord(BlockPos.getZ(pos)));
+    }
+
+    // clamped to what a packed block position can hold, so infinite ranges don't overflow
+    private static int toSection(double blockCoord, int limit) {
+        return SectionPos.blockToSectionCoord(Mth.clamp(Mth.floor(blockCoord), -limit, limit - 1));
+    }
+
+    private static double distanceToSectionSqr(long section, Vec3 point) {
+        double dx = distanceToRange(point.x, SectionPos.sectionToBlockCoord(SectionPos.x(section)));
+        double dy = distanceToRange(point.y, SectionPos.sectionToBlockCoord(SectionPos.y(section)));
+        double dz = distanceToRange(point.z, SectionPos.sectionToBlockCoord(SectionPos.z(section)));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double distanceToRange(double value, int min) {
+        if (value < min) return min - value;
+        if (value > min + SectionPos.SECTION_SIZE) return value - (min + SectionPos.SECTION_SIZE);
+        return 0;
+    }
+
+    @FunctionalInterface
+    private interface SectionConsumer {
+        void accept(long section, LongSet bucket);
+    }
+}
@@ -92,6 +92,10 @@ public class Metadata {
         this.name = name;
     }
 
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
     public void updateModified() {
         this.lastModified = Instant.now();
     }
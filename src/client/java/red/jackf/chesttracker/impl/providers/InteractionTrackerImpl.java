@@ -48,4 +48,17 @@ public class InteractionTrackerImpl implements InteractionTracker {
     public void setLastBlockSource(ClientBlockSource source) {
         this.lastSource = source;
     }
+
+    /**
+     * Runs an action with the last block source temporarily set, such as when replaying an event from earlier.
+     */
+    public void withLastBlockSource(@Nullable ClientBlockSource source, Runnable action) {
+        ClientBlockSource current = this.lastSource;
+        this.lastSource = source;
+        try {
+            action.run();
+        } finally {
+            this.lastSource = current;
+        }
+    }
 }
@@ -3,7 +3,6 @@ package red.jackf.chesttracker.impl.providers;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import net.minecraft.network.chat.Component;
-import net.minecraft.world.inventory.Slot;
 import net.minecraft.world.item.ItemStack;
 import org.jetbrains.annotations.ApiStatus;
 import red.jackf.chesttracker.api.gui.GetCustomName;
@@ -15,10 +14,25 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 
-public record ScreenCloseContextImpl(AbstractContainerScreen<?> screen) implements ScreenCloseContext {
+/**
+ * Screen close context, with titles and contents captured when created so it can be handled later, such as after a
+ * memory bank finishes loading.
+ */
+public record ScreenCloseContextImpl(AbstractContainerScreen<?> screen,
+                                     Component title,
+                                     Optional<Component> customTitle,
+                                     List<Pair<Integer, ItemStack>> itemsAndSlots) implements ScreenCloseContext {
     @ApiStatus.Internal
     public static ScreenCloseContext createFor(AbstractContainerScreen<?> screen) {
-        return new ScreenCloseContextImpl(screen);
+        Optional<Component> customTitle = GetCustomName.EVENT.invoker().getName(screen).asOptional();
+        return new ScreenCloseContextImpl(
+                screen,
+                customTitle.orElse(((CTTitleOverrideDuck) screen).chesttracker$getOriginalTitle()),
+                customTitle,
+                screen.getMenu().slots.stream()
+                        .filter(slot -> !ProviderUtils.isPlayerSlot(slot) && slot.hasItem())
+                        .map(slot -> Pair.of(slot.index, slot.getItem().copy()))
+                        .toList());
     }
 
     @Override
@@ -28,19 +42,18 @@ public record ScreenCloseContextImpl(AbstractContainerScreen<?> screen) implemen
 
     @Override
     public Component getTitle() {
-        return GetCustomName.EVENT.invoker().getName(screen).asOptional().orElse(((CTTitleOverrideDuck) screen).chesttracker$getOriginalTitle());
+        return this.title;
     }
 
     @Override
     public Optional<Component> getCustomTitle() {
-        return GetCustomName.EVENT.invoker().getName(screen).asOptional();
+        return this.customTitle;
     }
 
     @Override
     public List<ItemStack> getItems() {
-        return screen.getMenu().slots.stream()
-                .filter(slot -> !ProviderUtils.isPlayerSlot(slot) && slot.hasItem())
-                .map(Slot::getItem)
+        return this.itemsAndSlots.stream()
+                .map(Pair::getSecond)
                 .toList();
     }
 
@@ -51,9 +64,6 @@ public record ScreenCloseContextImpl(AbstractContainerScreen<?> screen) implemen
 
     @Override
     public List<Pair<Integer, ItemStack>> getItemsAndSlots() {
-        return screen.getMenu().slots.stream()
-                .filter(slot -> !ProviderUtils.isPlayerSlot(slot) && slot.hasItem())
-                .map(slot -> Pair.of(slot.index, slot.getItem()))
-                .toList();
+        return this.itemsAndSlots;
     }
 }
@@ -4,15 +4,12 @@ import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
-import red.jackf.chesttracker.api.memory.Memory;
-import red.jackf.chesttracker.api.memory.MemoryKey;
 import red.jackf.chesttracker.api.providers.ProviderUtils;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
-import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
 import red.jackf.whereisit.client.api.RenderUtils;
 
-import java.util.Map;
 import java.util.Set;
 
 public class NameRenderer {
@@ -21,23 +18,20 @@ public class NameRenderer {
             MemoryBankAccessImpl.INSTANCE.getLoadedInternal().ifPresent(bank -> {
                 if (!bank.getMetadata().getCompatibilitySettings().displayContainerNames)
                     return;
-                bank.getKey(ProviderUtils.getPlayersCurrentKey()).ifPresent(key -> NameRenderer.renderNamesForKey(context, bank, key));
+                ProviderUtils.getPlayersCurrentKey().flatMap(bank::getKeyInternal).ifPresent(key -> NameRenderer.renderNamesForKey(context, key));
             });
             return true;
         });
     }
 
-    private static void renderNamesForKey(WorldRenderContext context, MemoryBankImpl bank, MemoryKey key) {
-        Map<BlockPos, Memory> named = key.getNamedMemories();
-        final int maxRangeSq = ChestTrackerConfig.INSTANCE.instance().rendering.nameRange * ChestTrackerConfig.INSTANCE.instance().rendering.nameRange;
+    private static void renderNamesForKey(WorldRenderContext context, MemoryKeyImpl key) {
+        final int maxRange = ChestTrackerConfig.INSTANCE.instance().rendering.nameRange;
         Set<BlockPos> alreadyRendering = RenderUtils.getCurrentlyRenderedWithNames();
-        for (var entry : named.entrySet()) {
-            if (alreadyRendering.contains(entry.getKey())) continue;
-            if (entry.getKey().distToCenterSqr(context.camera().getPosition()) < maxRangeSq) {
-                Component name = entry.getValue().renderName();
-                if (name == null) continue;
-                RenderUtils.scheduleLabelRender(entry.getValue().getCenterPosition(entry.getKey()).add(0, 1, 0), entry.getValue().renderName());
-            }
-        }
+        key.forEachNamedWithin(context.camera().getPosition(), maxRange, (pos, memory) -> {
+            if (alreadyRendering.contains(pos)) return;
+            Component name = memory.renderName();
+            if (name == null) return;
+            RenderUtils.scheduleLabelRender(memory.getCenterPosition(pos).add(0, 1, 0), name);
+        });
     }
 }
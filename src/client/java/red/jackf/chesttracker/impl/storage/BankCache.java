@@ -0,0 +1,139 @@
+package red.jackf.chesttracker.impl.storage;
+
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
+import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>In-memory tier in front of the storage backend, keeping recently used memory banks decoded so that switching back
+ * to one doesn't read it from disk again.</p>
+ *
+ * <p>Banks are kept in least recently used order, and evicted once their estimated heap usage goes over
+ * {@link ChestTrackerConfig.Storage#bankCacheMegabytes}. Evicted banks with unsaved changes are written behind through
+ * the backend. The currently loaded bank is never evicted.</p>
+ *
+ * <p>Each bank's size is estimated when it is added, and again each time it is added after that, such as when saved;
+ * evicting only looks at those estimates.</p>
+ *
+ * <p>All methods should be called from the client thread.</p>
+ */
+class BankCache {
+    private static final Logger LOGGER = ChestTracker.getLogger("Bank Cache");
+
+    // rough sizes of a decoded memory and each of its items; item prototypes are mostly shared, so aren't counted
+    private static final long MEMORY_BYTES = 160;
+    private static final long STACK_BYTES = 16;
+
+    private final Map<String, MemoryBankImpl> banks = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> estimates = new HashMap<>();
+    private long totalBytes = 0;
+    private final Consumer<MemoryBankImpl> writer;
+
+    /**
+     * @param writer Called with evicted banks that have unsaved changes.
+     */
+    BankCache(Consumer<MemoryBankImpl> writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Gets a cached bank, marking it as recently used.
+     */
+    @Nullable
+    MemoryBankImpl get(String id) {
+        return banks.get(id);
+    }
+
+    /**
+     * Adds a bank to the cache, or marks it as recently used if already present, then evicts older banks if over
+     * budget. The bank's size is estimated again, as it may have grown since it was last added.
+     */
+    void add(MemoryBankImpl bank) {
+        if (getBudgetBytes() <= 0) return;
+        String id = bank.getId();
+        banks.put(id, bank);
+        long size = estimateBytes(bank);
+        Long previous = estimates.put(id, size);
+        totalBytes += size - (previous != null ? previous : 0);
+        trim();
+    }
+
+    /**
+     * Removes a bank from the cache without saving it, such as when it has been deleted.
+     */
+    void remove(String id) {
+        banks.remove(id);
+        forget(id);
+    }
+
+    /**
+     * Removes a bank from the cache, writing it first if it has unsaved changes.
+     */
+    void evict(String id) {
+        MemoryBankImpl bank = banks.remove(id);
+        forget(id);
+        if (bank != null && bank.isDirty()) writer.accept(bank);
+    }
+
+    /**
+     * Writes all cached banks with unsaved changes, then empties the cache.
+     */
+    void flush() {
+        banks.values().stream().filter(MemoryBankImpl::isDirty).forEach(writer);
+        banks.clear();
+        estimates.clear();
+        totalBytes = 0;
+    }
+
+    private void forget(String id) {
+        Long size = estimates.remove(id);
+        if (size != null) totalBytes -= size;
+    }
+
+    private void trim() {
+        final long budget = getBudgetBytes();
+        if (totalBytes <= budget) return;
+        final MemoryBankImpl loaded = MemoryBankAccessImpl.INSTANCE.getLoadedInternal().orElse(null);
+
+        // least recently used first
+        Iterator<Map.Entry<String, MemoryBankImpl>> iterator = banks.entrySet().iterator();
+        while (iterator.hasNext() && totalBytes > budget) {
+            Map.Entry<String, MemoryBankImpl> entry = iterator.next();
+            MemoryBankImpl bank = entry.getValue();
+            if (bank == loaded) continue;
+
+            iterator.remove();
+            long size = estimates.remove(entry.getKey());
+            totalBytes -= size;
+            LOGGER.debug("Evicted {} (~{} KiB)", entry.getKey(), size / 1024);
+            if (bank.isDirty()) writer.accept(bank);
+        }
+    }
+
+    private static long getBudgetBytes() {
+        return ChestTrackerConfig.INSTANCE.instance().storage.bankCacheMegabytes * 1024L * 1024L;
+    }
+
+    // only counts loaded keys; items that haven't been decoded yet aren't counted
+    private static long estimateBytes(MemoryBankImpl bank) {
+        long size = 0;
+        for (MemoryKeyImpl key : bank.getMemories().values()) {
+            for (Memory memory : key.getMemories().values()) {
+                size += MEMORY_BYTES;
+                if (memory.pendingItems() == null) size += memory.stacks().size() * STACK_BYTES;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,18 @@
+package red.jackf.chesttracker.impl.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * Lightweight details of a stored memory bank, used to list banks without loading their full metadata.
+ *
+ * @param id           ID of the memory bank.
+ * @param name         User-facing name of the memory bank, or null if not set.
+ * @param lastModified When this memory bank was last saved.
+ * @param size         Size of this bank on disk in bytes, if known.
+ * @param memoryCount  Total number of memories in this bank, if known.
+ */
+public record BankSummary(String id, @Nullable String name, Instant lastModified, OptionalLong size, OptionalInt memoryCount) {}
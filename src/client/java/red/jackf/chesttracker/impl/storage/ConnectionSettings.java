@@ -35,7 +35,7 @@ public record ConnectionSettings(Optional<String> memoryBankIdOverride) {
     }
 
     public static void save() {
-        FileUtil.saveToNbt(settings, FILE_CODEC, PATH, null);
+        DeferredWriter.markDirty(STORE);
     }
 
     public static ConnectionSettings getOrCreate(String connectionId) {
@@ -60,4 +60,8 @@ public record ConnectionSettings(Optional<String> memoryBankIdOverride) {
             Codec.STRING.optionalFieldOf("memory_bank_id_override").forGetter(ConnectionSettings::memoryBankIdOverride)
     ).apply(i, ConnectionSettings::new));
     private static final Codec<Map<String, ConnectionSettings>> FILE_CODEC = JFLCodecs.mutableMap(Codec.unboundedMap(Codec.STRING, CONNECTION_SETTINGS_CODEC));
+    private static final DeferredWriter.Store STORE = () -> {
+        Map<String, ConnectionSettings> copy = Map.copyOf(settings);
+        return () -> FileUtil.saveToNbt(copy, FILE_CODEC, PATH, null);
+    };
 }
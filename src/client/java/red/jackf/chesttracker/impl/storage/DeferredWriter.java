@@ -0,0 +1,100 @@
+package red.jackf.chesttracker.impl.storage;
+
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.minecraft.Util;
+import org.apache.logging.log4j.Logger;
+import red.jackf.chesttracker.impl.ChestTracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Writes small settings files, such as connection settings and button positions, off the client thread.</p>
+ *
+ * <p>Stores are {@link #markDirty(Store) marked dirty} instead of being written straight away. Once nothing has been
+ * marked for {@link #DEBOUNCE_MILLIS}, all dirty stores are snapshotted on the client thread and written together on
+ * the {@link SaveScheduler#getExecutor() storage thread}, so repeated UI changes like dragging or resizing only cause
+ * one write. Stores that can't be copied are {@link Store#onClientThread(Runnable) written on the client thread}
+ * instead.</p>
+ *
+ * <p>All methods should be called from the client thread.</p>
+ */
+public class DeferredWriter {
+    private static final Logger LOGGER = ChestTracker.getLogger("Deferred Writer");
+    private static final long DEBOUNCE_MILLIS = 1_000L;
+
+    private static final Set<Store> dirty = new LinkedHashSet<>();
+    private static long lastMarkedMillis = 0;
+    private static CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+
+    private DeferredWriter() {}
+
+    public static void setup() {
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (!dirty.isEmpty() && Util.getMillis() - lastMarkedMillis >= DEBOUNCE_MILLIS) write();
+        });
+    }
+
+    /**
+     * Queue a store to be written once changes have settled.
+     *
+     * @param store Store to write.
+     */
+    public static void markDirty(Store store) {
+        dirty.add(store);
+        lastMarkedMillis = Util.getMillis();
+    }
+
+    /**
+     * Writes all dirty stores immediately, and blocks until they and any earlier writes have finished. Used when the
+     * game closes.
+     */
+    public static void flush() {
+        if (!dirty.isEmpty()) write();
+        lastWrite.join();
+    }
+
+    private static void write() {
+        List<Runnable> writes = new ArrayList<>(dirty.size());
+        for (Store store : dirty) writes.add(store.snapshot());
+        dirty.clear();
+
+        lastWrite = CompletableFuture.runAsync(() -> {
+            for (Runnable write : writes) write.run();
+            LOGGER.debug("Wrote {} settings files", writes.size());
+        }, SaveScheduler.getExecutor()).exceptionally(ex -> {
+            LOGGER.error("Error writing settings files", ex);
+            return null;
+        });
+    }
+
+    /**
+     * A file written through the deferred writer.
+     */
+    @FunctionalInterface
+    public interface Store {
+        /**
+         * Called on the client thread to copy any state that needs writing.
+         *
+         * @return Write using the copied state, run on the storage thread.
+         */
+        Runnable snapshot();
+
+        /**
+         * Creates a store that is written on the client thread once changes have settled, for files whose state can't
+         * be copied, such as ones serialized by another library straight from the live object.
+         *
+         * @param write Write to run on the client thread.
+         * @return A store running the given write when snapshotted.
+         */
+        static Store onClientThread(Runnable write) {
+            return () -> {
+                write.run();
+                return () -> {};
+            };
+        }
+    }
+}
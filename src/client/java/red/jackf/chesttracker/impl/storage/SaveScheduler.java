@@ -0,0 +1,131 @@
+package red.jackf.chesttracker.impl.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.minecraft.client.Minecraft;
+import net.minecraft.core.HolderLookup;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.storage.backend.Backend;
+import red.jackf.chesttracker.impl.util.Misc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Runs memory bank saves on a dedicated storage thread, for backends where {@link Backend#savesOffThread()} is true.</p>
+ *
+ * <p>A snapshot of the bank is taken on the client thread when a save starts. Only one save per bank is in flight at
+ * once; requests made while a save is running are coalesced into a single follow-up save, started when the running one
+ * completes.</p>
+ *
+ * <p>All methods should be called from the client thread.</p>
+ */
+public class SaveScheduler {
+    private static final Logger LOGGER = ChestTracker.getLogger("Save Scheduler");
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("Chest Tracker Storage")
+            .setDaemon(true)
+            .build());
+
+    private static final Map<String, CompletableFuture<Boolean>> running = new HashMap<>();
+    private static final Map<String, Request> pending = new HashMap<>();
+
+    private SaveScheduler() {}
+
+    /**
+     * @return The executor used for storage IO. Tasks submitted here run in order with memory bank saves.
+     */
+    public static ExecutorService getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Queue a save for the given bank, or coalesce it into a follow-up if one is already running.
+     */
+    public static void submit(Backend backend, MemoryBankImpl bank, @Nullable HolderLookup.Provider registries) {
+        Request request = new Request(backend, bank, registries);
+        if (running.containsKey(bank.getId())) {
+            pending.put(bank.getId(), request);
+        } else {
+            start(request);
+        }
+    }
+
+    /**
+     * Blocks until any running or pending saves for the given bank have been written. Used before reading or deleting
+     * a bank's files.
+     *
+     * @param id ID of the memory bank to wait for.
+     */
+    public static void await(String id) {
+        CompletableFuture<Boolean> current = running.remove(id);
+        if (current != null) current.join();
+
+        Request next = pending.remove(id);
+        if (next != null) {
+            start(next);
+            running.remove(id).join();
+        }
+    }
+
+    /**
+     * Non-blocking version of {@link #await(String)}, for reading a bank's files off the client thread.
+     *
+     * @param id ID of the memory bank to wait for.
+     * @return A future completing on the client thread once any running or pending saves for the bank have been written.
+     */
+    public static CompletableFuture<Void> whenWritten(String id) {
+        CompletableFuture<Boolean> current = running.get(id);
+        if (current == null) return CompletableFuture.completedFuture(null);
+        // check again once done, as completing may have started a pending save
+        return current.handleAsync((success, ex) -> null, Minecraft.getInstance())
+                .thenCompose(ignored -> whenWritten(id));
+    }
+
+    /**
+     * Blocks until all running and pending saves have been written. Used when the game closes.
+     */
+    public static void flush() {
+        Set<String> ids = new HashSet<>(running.keySet());
+        ids.addAll(pending.keySet());
+        ids.forEach(SaveScheduler::await);
+    }
+
+    private static void start(Request request) {
+        final String id = request.bank.getId();
+        final MemoryBankImpl snapshot = request.bank.createSaveSnapshot();
+
+        CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+            var result = Misc.time(() -> request.backend.save(snapshot, request.registries));
+            LOGGER.debug("Saved {} in {}ns", id, result.getSecond());
+            return result.getFirst();
+        }, EXECUTOR).exceptionally(ex -> {
+            LOGGER.error("Error saving memory bank {}", id, ex);
+            return false;
+        });
+
+        running.put(id, future);
+        future.thenAcceptAsync(success -> onComplete(request, snapshot, future, success), Minecraft.getInstance());
+    }
+
+    private static void onComplete(Request request, MemoryBankImpl snapshot, CompletableFuture<Boolean> future, boolean success) {
+        // put back changes that didn't make it to disk
+        request.bank.finishSave(snapshot, success);
+
+        // already handled by await()
+        if (running.get(request.bank.getId()) != future) return;
+        running.remove(request.bank.getId());
+
+        Request next = pending.remove(request.bank.getId());
+        if (next != null) start(next);
+    }
+
+    private record Request(Backend backend, MemoryBankImpl bank, @Nullable HolderLookup.Provider registries) {}
+}
@@ -1,20 +1,35 @@
 package red.jackf.chesttracker.impl.storage;
 
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.screen.v1.ScreenEvents;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screens.PauseScreen;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.providers.ProviderUtils;
 import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
 import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
 import red.jackf.chesttracker.impl.memory.metadata.Metadata;
 import red.jackf.chesttracker.impl.storage.backend.Backend;
+import red.jackf.chesttracker.impl.storage.backend.BankHistory;
+import red.jackf.chesttracker.impl.storage.backend.FileBasedBackend;
+import red.jackf.chesttracker.impl.util.Misc;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class Storage {
 
@@ -23,14 +38,23 @@ public class Storage {
     //////////////
 
     private static final Logger LOGGER = ChestTracker.getLogger("Storage");
+    private static final long INCREMENTAL_SAVE_INTERVAL_MILLIS = 2_000L;
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = 30_000L;
+    private static final long KEY_IDLE_MILLIS = 5 * 60_000L;
+    private static final BankCache CACHE = new BankCache(Storage::write);
     private static Backend backend;
+    private static long lastSaveMillis = Util.getMillis();
+    private static long lastIdleCheckMillis = Util.getMillis();
 
     public static void setBackend(Backend backend) {
+        // write anything pending with the backend it was loaded from
+        if (Storage.backend != null) CACHE.flush();
         Storage.backend = backend;
     }
 
     public static void setup() {
         ChestTrackerConfig.INSTANCE.instance().storage.storageBackend.load();
+        DeferredWriter.setup();
 
         // storage saving hooks
 
@@ -38,6 +62,45 @@ public class Storage {
         ScreenEvents.AFTER_INIT.register((client, screen, scaledWidth, scaledHeight) -> {
             if (screen instanceof PauseScreen) MemoryBankAccessImpl.INSTANCE.save();
         });
+
+        // on a timer, if anything changed
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            long interval = getAutosaveIntervalMillis();
+            if (interval <= 0 || Util.getMillis() - lastSaveMillis < interval) return;
+            MemoryBankAccessImpl.INSTANCE.getLoadedInternal().ifPresent(bank -> {
+                if (bank.isDirty()) {
+                    LOGGER.debug("Autosaving {}", bank.getId());
+                    save(bank);
+                }
+            });
+        });
+
+        // unload keys that haven't been used in a while
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (Util.getMillis() - lastIdleCheckMillis < IDLE_CHECK_INTERVAL_MILLIS) return;
+            lastIdleCheckMillis = Util.getMillis();
+            MemoryBankAccessImpl.INSTANCE.getLoadedInternal().ifPresent(bank -> {
+                Set<ResourceLocation> keep = ProviderUtils.getPlayersCurrentKey().map(Set::of).orElse(Set.of());
+                int unloaded = bank.unloadIdleKeys(KEY_IDLE_MILLIS, keep);
+                if (unloaded > 0) LOGGER.debug("Unloaded {} idle keys from {}", unloaded, bank.getId());
+            });
+        });
+
+        // make sure everything is written before closing
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> {
+            MemoryBankAccessImpl.INSTANCE.save();
+            DeferredWriter.flush();
+            SaveScheduler.flush();
+        });
+    }
+
+    private static long getAutosaveIntervalMillis() {
+        final int minutes = ChestTrackerConfig.INSTANCE.instance().storage.autosaveIntervalMinutes;
+        // disabled; only save when pausing or leaving
+        if (minutes <= 0) return 0;
+        // cheap to save, so keep close to what's in memory in case of a crash
+        if (backend.savesIncrementally()) return INCREMENTAL_SAVE_INTERVAL_MILLIS;
+        return minutes * 60_000L;
     }
 
     /////////
@@ -48,6 +111,8 @@ public class Storage {
         Optional<MemoryBankImpl> existing = MemoryBankAccessImpl.INSTANCE.getLoadedInternal();
         if (existing.isPresent() && id.equals(existing.get().getId()))
             return Optional.of(existing.get().getMetadata().deepCopy());
+        MemoryBankImpl cached = CACHE.get(id);
+        if (cached != null) return Optional.of(cached.getMetadata().deepCopy());
         LOGGER.debug("Loading {} metadata using {}", id, backend.getClass().getSimpleName());
         return backend.loadMetadata(id);
     }
@@ -56,14 +121,70 @@ public class Storage {
         return backend.getAllIds();
     }
 
+    /**
+     * @return Summaries of all stored memory banks sorted by ID, reflecting the currently loaded bank's unsaved name.
+     */
+    public static List<BankSummary> getSummaries() {
+        Optional<MemoryBankImpl> loaded = MemoryBankAccessImpl.INSTANCE.getLoadedInternal();
+        return backend.getSummaries().stream()
+                .map(summary -> {
+                    if (loaded.isPresent() && summary.id().equals(loaded.get().getId()))
+                        return new BankSummary(summary.id(),
+                                loaded.get().getMetadata().getName(),
+                                summary.lastModified(),
+                                summary.size(),
+                                summary.memoryCount());
+                    return summary;
+                }).toList();
+    }
+
     public static boolean exists(String id) {
         return backend.exists(id);
     }
 
     public static void delete(String id) {
+        CACHE.remove(id);
+        SaveScheduler.await(id);
         backend.delete(id);
     }
 
+    /**
+     * Reconstructs the memories in a stored memory bank as they were at a given time, using its save history.
+     *
+     * @param id   ID of the memory bank.
+     * @param asOf Time to reconstruct the bank at.
+     * @return Map of key IDs to memory keys as of the given time, or an empty optional if the backend doesn't keep
+     * history.
+     */
+    public static Optional<Map<ResourceLocation, MemoryKeyImpl>> reconstruct(String id, Instant asOf) {
+        if (!(backend instanceof FileBasedBackend fileBackend) || !fileBackend.recordsHistory()) return Optional.empty();
+        SaveScheduler.await(id);
+        return Optional.of(fileBackend.getHistory().reconstruct(id, asOf, getRegistries()));
+    }
+
+    /**
+     * Compares the memories in a stored memory bank between two times, using its save history.
+     *
+     * @param id   ID of the memory bank.
+     * @param from Earlier time to compare from.
+     * @param to   Later time to compare to.
+     * @return Map of key IDs to differences in each key, or an empty optional if the backend doesn't keep history.
+     */
+    public static Optional<Map<ResourceLocation, BankHistory.KeyDiff>> diff(String id, Instant from, Instant to) {
+        if (!(backend instanceof FileBasedBackend fileBackend) || !fileBackend.recordsHistory()) return Optional.empty();
+        SaveScheduler.await(id);
+        return Optional.of(fileBackend.getHistory().diff(id, from, to, getRegistries()));
+    }
+
+    /**
+     * @return Registry access for the current level, or null if not in-game.
+     */
+    @Nullable
+    public static HolderLookup.Provider getRegistries() {
+        var level = Minecraft.getInstance().level;
+        return level != null ? level.registryAccess() : null;
+    }
+
     public static Component getBackendLabel(String memoryBankId) {
         return backend.getDescriptionLabel(memoryBankId);
     }
@@ -73,34 +194,105 @@ public class Storage {
         if (existing.isPresent() && id.equals(existing.get().getId()))
             return existing;
 
-        var level = Minecraft.getInstance().level;
-        HolderLookup.Provider registries = null;
-
-        if (level != null) {
-            registries = level.registryAccess();
+        HolderLookup.Provider registries = getRegistries();
+        MemoryBankImpl cached = getCached(id, registries);
+        if (cached != null) {
+            LOGGER.debug("Loading {} from cache", id);
+            return Optional.of(cached);
         }
 
+        SaveScheduler.await(id);
+
         LOGGER.debug("Loading {} using {}", id, backend.getClass().getSimpleName());
         var loaded = backend.load(id, registries);
         if (loaded == null) return Optional.empty();
         loaded.setId(id);
+        CACHE.add(loaded);
         return Optional.of(loaded);
     }
 
+    /**
+     * Loads a memory bank on a background thread, so large banks don't freeze the game. Banks that are already loaded
+     * or cached are returned immediately.
+     *
+     * @param id ID of the memory bank to load.
+     * @return A future completing on the client thread with the loaded bank, or an empty optional if none exists.
+     */
+    public static CompletableFuture<Optional<MemoryBankImpl>> loadAsync(String id) {
+        Optional<MemoryBankImpl> existing = MemoryBankAccessImpl.INSTANCE.getLoadedInternal();
+        if (existing.isPresent() && id.equals(existing.get().getId()))
+            return CompletableFuture.completedFuture(existing);
+
+        final HolderLookup.Provider registries = getRegistries();
+        MemoryBankImpl cached = getCached(id, registries);
+        if (cached != null) return CompletableFuture.completedFuture(Optional.of(cached));
+
+        // only backends saving off-thread are safe to read from other threads
+        if (!backend.savesOffThread()) return CompletableFuture.completedFuture(load(id));
+
+        final Backend backend = Storage.backend;
+        final Optional<ResourceLocation> currentKey = ProviderUtils.getPlayersCurrentKey();
+
+        return SaveScheduler.whenWritten(id).thenApplyAsync(ignored -> {
+            LOGGER.debug("Loading {} in the background using {}", id, backend.getClass().getSimpleName());
+            var result = Misc.time(() -> {
+                MemoryBankImpl bank = backend.load(id, registries);
+                // needed straight away, so decode it here rather than on the client thread
+                if (bank != null) currentKey.ifPresent(bank::preload);
+                return bank;
+            });
+            LOGGER.debug("Loaded {} in {}ns", id, result.getSecond());
+            return Optional.ofNullable(result.getFirst());
+        }, Util.backgroundExecutor()).thenApplyAsync(loaded -> {
+            // loaded again while this was reading, so this copy may be missing changes; keep using the other one
+            Optional<MemoryBankImpl> current = MemoryBankAccessImpl.INSTANCE.getLoadedInternal();
+            if (current.isPresent() && id.equals(current.get().getId())) return current;
+            MemoryBankImpl cachedNow = getCached(id, registries);
+            if (cachedNow != null) return Optional.of(cachedNow);
+
+            loaded.ifPresent(bank -> {
+                bank.setId(id);
+                CACHE.add(bank);
+            });
+            return loaded;
+        }, Minecraft.getInstance());
+    }
+
+    /**
+     * Gets a cached bank, if it was loaded with the given registries. Banks loaded with other registries, such as from
+     * the title screen or an earlier session, hold items that don't match the current registries, so are evicted to be
+     * loaded again.
+     */
+    @Nullable
+    private static MemoryBankImpl getCached(String id, @Nullable HolderLookup.Provider registries) {
+        MemoryBankImpl cached = CACHE.get(id);
+        if (cached == null || cached.getRegistries() == registries) return cached;
+        LOGGER.debug("Evicting {} from cache, loaded with different registries", id);
+        CACHE.evict(id);
+        return null;
+    }
+
     public static void save(MemoryBankImpl bank) {
         if (bank == null) {
             LOGGER.warn("Tried to save null Memory Bank");
             return;
         }
 
-        var level = Minecraft.getInstance().level;
-        HolderLookup.Provider registries = null;
+        CACHE.add(bank);
+        write(bank);
+    }
 
-        if (level != null) {
-            registries = level.registryAccess();
-        }
+    private static void write(MemoryBankImpl bank) {
+        // encode with the registries its items were decoded with, which may be from before leaving a world
+        final HolderLookup.Provider registries = bank.getRegistries();
 
         bank.getMetadata().updateModified();
-        backend.save(bank, registries);
+        lastSaveMillis = Util.getMillis();
+
+        if (backend.savesOffThread()) {
+            SaveScheduler.submit(backend, bank, registries);
+        } else if (backend.save(bank, registries)) {
+            bank.clearDirty();
+        }
     }
 }
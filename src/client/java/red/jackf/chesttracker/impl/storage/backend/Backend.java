@@ -6,10 +6,10 @@ import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.impl.memory.MemoryBankAccessImpl;
 import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
 import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.storage.BankSummary;
 import red.jackf.chesttracker.impl.storage.Storage;
 
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * A handler for storing a memory bank in a black-box format
@@ -34,13 +34,35 @@ public interface Backend {
 
     /**
      * Save this memory bank and metadata. The ID is contained within the memory bank; use {@link MemoryBankImpl#getId()}.
-     * If an error occurs, an exception should be logged, but should not crash the game.
+     * If an error occurs, an exception should be logged, but should not crash the game. Backends may choose to only
+     * write keys in {@link MemoryBankImpl#getDirtyKeys()}; these are cleared after a successful save.
      *
      * @param memoryBank Memory bank to save to this storage.
      * @param registries
      */
     boolean save(MemoryBankImpl memoryBank, @Nullable HolderLookup.Provider registries);
 
+    /**
+     * Whether this backend's saves should be run off the client thread. If true, {@link #save(MemoryBankImpl, HolderLookup.Provider)}
+     * is called on the storage thread with a snapshot from {@link MemoryBankImpl#createSaveSnapshot()}, which only
+     * contains the bank's dirty keys.
+     *
+     * @return Whether this backend saves off-thread.
+     */
+    default boolean savesOffThread() {
+        return false;
+    }
+
+    /**
+     * Whether this backend only writes what changed since the last save, using {@link red.jackf.chesttracker.impl.memory.MemoryKeyImpl#getChangedPositions()}.
+     * Incremental backends are saved shortly after each change instead of on the autosave interval.
+     *
+     * @return Whether this backend saves incrementally.
+     */
+    default boolean savesIncrementally() {
+        return false;
+    }
+
     /**
      * Returns a small label to show at the top of the "edit memory bank" screen.
      *
@@ -58,6 +80,20 @@ public interface Backend {
      */
     Collection<String> getAllIds();
 
+    /**
+     * Return summaries of all memory banks in this storage, sorted by ID. Backends that can list banks cheaply should
+     * override this; by default, each bank's metadata is loaded.
+     *
+     * @return Summaries of all memory banks accessible by this storage.
+     */
+    default List<BankSummary> getSummaries() {
+        return getAllIds().stream()
+                .sorted()
+                .flatMap(id -> loadMetadata(id).stream()
+                        .map(metadata -> new BankSummary(id, metadata.getName(), metadata.getLastModified(), OptionalLong.empty(), OptionalInt.empty())))
+                .toList();
+    }
+
     /**
      * Check whether an ID exists for this storage.
      *
@@ -89,6 +125,8 @@ public interface Backend {
     enum Type {
         JSON(new JsonBackend()),
         NBT(new NbtBackend()),
+        JOURNAL(new JournalBackend()),
+        BINARY(new BinaryBackend()),
         MEMORY(new GameMemoryBackend());
 
         public final Backend instance;
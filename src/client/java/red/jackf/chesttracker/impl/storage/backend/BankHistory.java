@@ -0,0 +1,356 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
+import red.jackf.chesttracker.impl.util.Constants;
+import red.jackf.chesttracker.impl.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Keeps a bounded history of a file based memory bank's previous states, so that destructive changes such as pruning
+ * can be looked back on.</p>
+ *
+ * <p>Each save records a reverse delta: for each changed key, the memories before the save at positions that were
+ * removed or changed, and the positions that were added. Deltas are built from what each key recorded as replaced
+ * since the last save, so saving never reads back the previous segments. Older states are reconstructed by undoing deltas from the
+ * current state on disk, newest first. Only memories are versioned; overrides and metadata are not.</p>
+ *
+ * <p>Deltas are stored as {@code <id><ext>.history/<version>.nbt}, stamped with the data version they were written at
+ * so that older memories are run through the data fixer when read. Once there are more than
+ * {@link ChestTrackerConfig.Storage#historyVersions}, the oldest are deleted.</p>
+ */
+public class BankHistory {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/History");
+    private static final String FILE_EXTENSION = ".nbt";
+
+    private final FileBasedBackend backend;
+
+    BankHistory(FileBasedBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * @return Whether history is enabled, and deltas should be computed on save.
+     */
+    static boolean isEnabled() {
+        return ChestTrackerConfig.INSTANCE.instance().storage.historyVersions > 0;
+    }
+
+    /**
+     * Records a save's delta as a new version, then removes versions over the limit. Called on the storage thread.
+     */
+    void record(String id, Map<ResourceLocation, KeyDelta> changes, @Nullable HolderLookup.Provider registries) {
+        if (changes.isEmpty()) return;
+
+        List<Long> versions = listVersionNumbers(id);
+        long next = versions.isEmpty() ? 1 : versions.getLast() + 1;
+        Path path = getHistoryDirectory(id).resolve(next + FILE_EXTENSION);
+        if (!FileUtil.saveToNbt(new Delta(Types.getCurrentVersion(), Instant.now(), changes), Delta.CODEC, path, registries)) return;
+
+        int limit = ChestTrackerConfig.INSTANCE.instance().storage.historyVersions;
+        for (int i = 0; i < versions.size() + 1 - limit; i++)
+            FileBasedBackend.deleteIfPresent(getHistoryDirectory(id).resolve(versions.get(i) + FILE_EXTENSION));
+    }
+
+    /**
+     * @return All stored versions of a memory bank, oldest first.
+     */
+    public List<Version> getVersions(String id, @Nullable HolderLookup.Provider registries) {
+        return listVersionNumbers(id).stream()
+                .flatMap(number -> loadDelta(id, number, registries)
+                        .map(delta -> new Version(number, delta.timestamp(), delta.keys().keySet()))
+                        .stream())
+                .toList();
+    }
+
+    /**
+     * Reconstructs the memories in a bank as they were at a given time. Should be called once any pending saves for the
+     * bank have been written.
+     *
+     * @param id         ID of the memory bank.
+     * @param asOf       Time to reconstruct the bank at.
+     * @param registries Registry access for decoding items.
+     * @return Map of key IDs to the memory keys as of the given time. Overrides are taken from the current state.
+     */
+    public Map<ResourceLocation, MemoryKeyImpl> reconstruct(String id, Instant asOf, @Nullable HolderLookup.Provider registries) {
+        Map<ResourceLocation, MemoryKeyImpl> current = loadCurrent(id, registries);
+        Map<ResourceLocation, Map<BlockPos, Memory>> state = toState(current);
+        for (Delta delta : loadDeltasNewestFirst(id, registries)) {
+            if (!delta.timestamp().isAfter(asOf)) break;
+            delta.undo(state);
+        }
+
+        Map<ResourceLocation, MemoryKeyImpl> result = new HashMap<>();
+        state.forEach((keyId, memories) -> {
+            if (memories.isEmpty()) return;
+            MemoryKeyImpl currentKey = current.get(keyId);
+            result.put(keyId, new MemoryKeyImpl(memories, currentKey != null ? currentKey.overrides() : Map.of()));
+        });
+        return result;
+    }
+
+    /**
+     * Compares the memories in a bank between two times. Should be called once any pending saves for the bank have
+     * been written.
+     *
+     * @param id         ID of the memory bank.
+     * @param from       Earlier time to compare from.
+     * @param to         Later time to compare to.
+     * @param registries Registry access for decoding items.
+     * @return Map of key IDs to differences in that key, for keys with any differences.
+     */
+    public Map<ResourceLocation, KeyDiff> diff(String id, Instant from, Instant to, @Nullable HolderLookup.Provider registries) {
+        Map<ResourceLocation, Map<BlockPos, Memory>> state = toState(loadCurrent(id, registries));
+        Map<ResourceLocation, Map<BlockPos, Memory>> toState = null;
+        Set<ResourceLocation> touched = new HashSet<>();
+
+        for (Delta delta : loadDeltasNewestFirst(id, registries)) {
+            if (!delta.timestamp().isAfter(from)) break;
+            if (toState == null && !delta.timestamp().isAfter(to)) toState = copyState(state);
+            if (toState != null) touched.addAll(delta.keys().keySet());
+            delta.undo(state);
+        }
+
+        if (toState == null) return Map.of();
+
+        Map<ResourceLocation, KeyDiff> result = new HashMap<>();
+        for (ResourceLocation keyId : touched) {
+            KeyDiff diff = KeyDiff.between(state.getOrDefault(keyId, Map.of()), toState.getOrDefault(keyId, Map.of()));
+            if (!diff.isEmpty()) result.put(keyId, diff);
+        }
+        return result;
+    }
+
+    Path getHistoryDirectory(String id) {
+        return Constants.STORAGE_DIR.resolve(id + backend.extension() + ".history");
+    }
+
+    private Map<ResourceLocation, MemoryKeyImpl> loadCurrent(String id, @Nullable HolderLookup.Provider registries) {
+        synchronized (backend.segmentLock) {
+            Map<ResourceLocation, String> segments = backend.loadManifest(id).map(SegmentManifest::segments).orElse(Map.of());
+            return backend.loadSegments(backend.getSegmentDirectory(id), segments, registries);
+        }
+    }
+
+    private List<Delta> loadDeltasNewestFirst(String id, @Nullable HolderLookup.Provider registries) {
+        return listVersionNumbers(id).reversed().stream()
+                .flatMap(number -> loadDelta(id, number, registries).stream())
+                .toList();
+    }
+
+    private Optional<Delta> loadDelta(String id, long number, @Nullable HolderLookup.Provider registries) {
+        Path path = getHistoryDirectory(id).resolve(number + FILE_EXTENSION);
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try {
+            DynamicOps<Tag> ops = registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
+            CompoundTag tag = Compression.readNbt(path);
+            // versions written before deltas were stamped are assumed to be current
+            int dataVersion = tag.contains(Types.VERSION_KEY, Tag.TAG_INT) ? tag.getInt(Types.VERSION_KEY) : Types.getCurrentVersion();
+            if (dataVersion < Types.getCurrentVersion()) fixMemories(tag, dataVersion, ops);
+            return Optional.of(MemoryTags.unwrap(Delta.CODEC.parse(ops, tag), "Invalid history version " + number));
+        } catch (IOException ex) {
+            LOGGER.error("Error loading history version {}", path, ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Runs each memory in an encoded delta through the data fixer, as with memories in segments and the journal.
+     */
+    private static void fixMemories(CompoundTag deltaTag, int dataVersion, DynamicOps<Tag> ops) throws IOException {
+        CompoundTag keys = deltaTag.getCompound("keys");
+        for (String keyId : keys.getAllKeys()) {
+            ListTag before = keys.getCompound(keyId).getList("before", Tag.TAG_COMPOUND);
+            for (int i = 0; i < before.size(); i++) {
+                CompoundTag entry = before.getCompound(i);
+                BlockPos pos = MemoryTags.unwrap(BlockPos.CODEC.parse(ops, entry.get("pos")), "Invalid position in history");
+                entry.put("memory", MemoryTags.fix(entry.getCompound("memory"), pos, dataVersion, ops));
+            }
+        }
+        deltaTag.putInt(Types.VERSION_KEY, Types.getCurrentVersion());
+    }
+
+    private List<Long> listVersionNumbers(String id) {
+        Path directory = getHistoryDirectory(id);
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(FILE_EXTENSION))
+                    .flatMap(name -> {
+                        try {
+                            return Stream.of(Long.parseLong(name.substring(0, name.length() - FILE_EXTENSION.length())));
+                        } catch (NumberFormatException ex) {
+                            return Stream.empty();
+                        }
+                    })
+                    .sorted()
+                    .toList();
+        } catch (IOException ex) {
+            LOGGER.error("Error listing history for {}", id, ex);
+            return List.of();
+        }
+    }
+
+    private static Map<ResourceLocation, Map<BlockPos, Memory>> toState(Map<ResourceLocation, MemoryKeyImpl> keys) {
+        Map<ResourceLocation, Map<BlockPos, Memory>> state = new HashMap<>();
+        keys.forEach((keyId, key) -> state.put(keyId, new HashMap<>(key.getMemories())));
+        return state;
+    }
+
+    private static Map<ResourceLocation, Map<BlockPos, Memory>> copyState(Map<ResourceLocation, Map<BlockPos, Memory>> state) {
+        Map<ResourceLocation, Map<BlockPos, Memory>> copy = new HashMap<>();
+        state.forEach((keyId, memories) -> copy.put(keyId, new HashMap<>(memories)));
+        return copy;
+    }
+
+    // memories are replaced rather than modified, and get a new timestamp each time they're recorded
+    private static boolean isSameMemory(Memory a, Memory b) {
+        return a.realTimestamp().equals(b.realTimestamp())
+                && a.loadedTimestamp().equals(b.loadedTimestamp())
+                && Objects.equals(a.savedName(), b.savedName())
+                && a.otherPositions().equals(b.otherPositions());
+    }
+
+    /**
+     * A stored version of a memory bank.
+     *
+     * @param number      Version number, increasing with each save.
+     * @param timestamp   When this version was saved.
+     * @param changedKeys Keys changed by this version.
+     */
+    public record Version(long number, Instant timestamp, Set<ResourceLocation> changedKeys) {}
+
+    /**
+     * Differences in a single memory key between two versions.
+     *
+     * @param added   Positions with a memory in the later version only.
+     * @param removed Positions with a memory in the earlier version only.
+     * @param changed Positions with a different memory in each version.
+     */
+    public record KeyDiff(Set<BlockPos> added, Set<BlockPos> removed, Set<BlockPos> changed) {
+        private static KeyDiff between(Map<BlockPos, Memory> before, Map<BlockPos, Memory> after) {
+            Set<BlockPos> added = new HashSet<>();
+            Set<BlockPos> removed = new HashSet<>();
+            Set<BlockPos> changed = new HashSet<>();
+            after.forEach((pos, memory) -> {
+                Memory previous = before.get(pos);
+                if (previous == null) added.add(pos);
+                else if (!isSameMemory(previous, memory)) changed.add(pos);
+            });
+            for (BlockPos pos : before.keySet())
+                if (!after.containsKey(pos)) removed.add(pos);
+            return new KeyDiff(added, removed, changed);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+
+    /**
+     * Reverse delta for a single key in a save.
+     *
+     * @param before Memories before the save, at positions that were removed or changed.
+     * @param added  Positions that had no memory before the save.
+     */
+    record KeyDelta(Map<BlockPos, Memory> before, Set<BlockPos> added) {
+        private static final Codec<KeyDelta> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Entry.CODEC.listOf().xmap(
+                        entries -> entries.stream().collect(Collectors.toMap(Entry::pos, Entry::memory)),
+                        map -> map.entrySet().stream().map(e -> new Entry(e.getKey(), e.getValue())).toList()
+                ).fieldOf("before").forGetter(KeyDelta::before),
+                BlockPos.CODEC.listOf().<Set<BlockPos>>xmap(HashSet::new, List::copyOf)
+                        .fieldOf("added").forGetter(KeyDelta::added)
+        ).apply(instance, KeyDelta::new));
+
+        /**
+         * Computes the reverse delta of a key being saved, from the memories it recorded as replaced since the last
+         * save.
+         *
+         * @param key Key being saved.
+         * @see MemoryKeyImpl#getSavedMemories()
+         */
+        static KeyDelta of(MemoryKeyImpl key) {
+            Map<BlockPos, Memory> previous = new HashMap<>();
+            Set<BlockPos> added = new HashSet<>();
+            Map<BlockPos, Memory> after = key.getMemories();
+            key.getSavedMemories().forEach((pos, old) -> {
+                Memory memory = after.get(pos);
+                if (old == null) {
+                    if (memory != null) added.add(pos);
+                } else if (memory == null || !isSameMemory(old, memory)) {
+                    previous.put(pos, old);
+                }
+            });
+            return new KeyDelta(previous, added);
+        }
+
+        /**
+         * Computes the reverse delta of a key removed since the last save.
+         *
+         * @param key Key as it was when removed.
+         */
+        static KeyDelta ofRemoved(MemoryKeyImpl key) {
+            return new KeyDelta(new HashMap<>(key.getSavedState()), Set.of());
+        }
+
+        boolean isEmpty() {
+            return before.isEmpty() && added.isEmpty();
+        }
+    }
+
+    private record Entry(BlockPos pos, Memory memory) {
+        private static final Codec<Entry> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                BlockPos.CODEC.fieldOf("pos").forGetter(Entry::pos),
+                Memory.CODEC.fieldOf("memory").forGetter(Entry::memory)
+        ).apply(instance, Entry::new));
+    }
+
+    /**
+     * @param dataVersion Data version the memories in this delta were saved at. Older versions are fixed before being
+     *                    decoded, so this is always current once loaded.
+     */
+    private record Delta(int dataVersion, Instant timestamp, Map<ResourceLocation, KeyDelta> keys) {
+        private static final Codec<Delta> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Codec.INT.optionalFieldOf(Types.VERSION_KEY, Types.getCurrentVersion()).forGetter(Delta::dataVersion),
+                Codec.LONG.xmap(Instant::ofEpochMilli, Instant::toEpochMilli)
+                        .fieldOf("timestamp").forGetter(Delta::timestamp),
+                Codec.unboundedMap(ResourceLocation.CODEC, KeyDelta.CODEC)
+                        .fieldOf("keys").forGetter(Delta::keys)
+        ).apply(instance, Delta::new));
+
+        private void undo(Map<ResourceLocation, Map<BlockPos, Memory>> state) {
+            keys.forEach((keyId, delta) -> {
+                Map<BlockPos, Memory> memories = state.computeIfAbsent(keyId, ignored -> new HashMap<>());
+                delta.added().forEach(memories::remove);
+                memories.putAll(delta.before());
+            });
+        }
+    }
+}
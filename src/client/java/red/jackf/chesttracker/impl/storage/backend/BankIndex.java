@@ -0,0 +1,268 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.ExtraCodecs;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.storage.BankSummary;
+import red.jackf.chesttracker.impl.util.FileUtil;
+import red.jackf.chesttracker.impl.util.Misc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * <p>Index of every memory bank stored by a {@link FileBasedBackend}, kept in a single file so that listing banks
+ * doesn't need to walk the storage directory or decode each bank's metadata.</p>
+ *
+ * <p>Each entry records the modification time of its bank's metadata file when it was indexed. Entries are checked
+ * against this when read, and only banks whose metadata file has changed are decoded again. This check is done at most
+ * once every {@link #VALIDATION_INTERVAL_MILLIS}, so repeatedly listing banks doesn't read every metadata file each
+ * time. If the index is missing or unreadable, it is rebuilt from the storage directory.</p>
+ *
+ * <p>Methods may be called from both the client and storage threads.</p>
+ */
+class BankIndex {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/Bank Index");
+    private static final Codec<Map<String, Entry>> CODEC = Codec.unboundedMap(Codec.STRING, Entry.CODEC).fieldOf("banks").codec();
+
+    private static final long VALIDATION_INTERVAL_MILLIS = 5_000L;
+
+    private final FileBasedBackend backend;
+    private @Nullable Map<String, Entry> entries = null;
+    private long lastValidatedMillis = 0;
+    private boolean validated = false;
+
+    BankIndex(FileBasedBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * @return All bank IDs in the index, after dropping banks that no longer exist.
+     */
+    synchronized Collection<String> getIds() {
+        return List.copyOf(this.validated().keySet());
+    }
+
+    /**
+     * @return Summaries for every bank in the index sorted by ID, re-reading metadata only for banks that have changed.
+     */
+    synchronized List<BankSummary> getSummaries() {
+        return this.validated().entrySet().stream()
+                .map(entry -> entry.getValue().toSummary(entry.getKey()))
+                .toList();
+    }
+
+    synchronized Optional<BankSummary> getSummary(String id) {
+        return Optional.ofNullable(this.validated().get(id)).map(entry -> entry.toSummary(id));
+    }
+
+    /**
+     * Updates a bank's entry after its metadata was saved on its own.
+     */
+    synchronized void onMetadataSaved(String id, Metadata metadata) {
+        Entry existing = this.getEntries().get(id);
+        Map<ResourceLocation, Integer> counts = existing != null ? existing.memoryCounts().orElse(null) : new HashMap<>();
+        this.put(id, metadata, counts);
+    }
+
+    /**
+     * Updates a bank's entry after it was saved. If the backend doesn't know the memory counts of every key, the counts
+     * for each dirty key in the saved bank are updated instead.
+     *
+     * @param bank         Bank that was saved.
+     * @param memoryCounts Number of memories in every key of the bank as stored, if known.
+     */
+    synchronized void onSaved(MemoryBankImpl bank, Optional<Map<ResourceLocation, Integer>> memoryCounts) {
+        if (memoryCounts.isPresent()) {
+            this.put(bank.getId(), bank.getMetadata(), new HashMap<>(memoryCounts.get()));
+            return;
+        }
+
+        Entry existing = this.getEntries().get(bank.getId());
+
+        // counts only stay accurate if every change since the first indexed save was recorded
+        Map<ResourceLocation, Integer> counts = existing == null ? new HashMap<>() : existing.memoryCounts().map(HashMap::new).orElse(null);
+        if (counts != null) {
+            for (ResourceLocation keyId : bank.getDirtyKeys()) {
+                Optional<MemoryKeyImpl> key = bank.getKeyInternal(keyId);
+                if (key.isPresent()) {
+                    counts.put(keyId, key.get().getMemories().size());
+                } else {
+                    counts.remove(keyId);
+                }
+            }
+        }
+
+        this.put(bank.getId(), bank.getMetadata(), counts);
+    }
+
+    synchronized void onDeleted(String id) {
+        if (this.getEntries().remove(id) != null) this.write();
+    }
+
+    private void put(String id, Metadata metadata, @Nullable Map<ResourceLocation, Integer> counts) {
+        Optional<Long> metadataModified = getModifiedTime(this.backend.getMetadataPath(id));
+        if (metadataModified.isEmpty()) return;
+        this.getEntries().put(id, new Entry(
+                Optional.ofNullable(metadata.getName()),
+                metadata.getLastModified(),
+                metadataModified.get(),
+                this.backend.getStoredSize(id),
+                Optional.ofNullable(counts)));
+        this.write();
+    }
+
+    private Map<String, Entry> validated() {
+        Map<String, Entry> entries = this.getEntries();
+        // changes made through this index are already reflected, so only outside changes can be missed until next time
+        if (this.validated && Util.getMillis() - this.lastValidatedMillis < VALIDATION_INTERVAL_MILLIS) return entries;
+        this.validated = true;
+        this.lastValidatedMillis = Util.getMillis();
+        boolean changed = false;
+
+        var iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            var entry = iter.next();
+            Optional<Long> modified = getModifiedTime(this.backend.getMetadataPath(entry.getKey()));
+            if (modified.isEmpty()) {
+                iter.remove();
+                changed = true;
+            } else if (modified.get() != entry.getValue().metadataModified()) {
+                Optional<Metadata> metadata = this.backend.loadMetadata(entry.getKey());
+                if (metadata.isPresent()) {
+                    entry.setValue(new Entry(
+                            Optional.ofNullable(metadata.get().getName()),
+                            metadata.get().getLastModified(),
+                            modified.get(),
+                            this.backend.getStoredSize(entry.getKey()),
+                            entry.getValue().memoryCounts()));
+                } else {
+                    iter.remove();
+                }
+                changed = true;
+            }
+        }
+
+        if (changed) this.write();
+        return entries;
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (this.entries == null) {
+            this.entries = this.read().orElseGet(this::rebuild);
+        }
+        return this.entries;
+    }
+
+    private Optional<Map<String, Entry>> read() {
+        Path path = this.backend.getIndexPath();
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try {
+            var str = FileUtils.readFileToString(path.toFile(), StandardCharsets.UTF_8);
+            var json = FileUtil.gson().fromJson(str, JsonElement.class);
+            return CODEC.parse(JsonOps.INSTANCE, json)
+                    .resultOrPartial(Util.prefix("Invalid bank index: ", LOGGER::error))
+                    .map(TreeMap::new);
+        } catch (JsonParseException | IOException ex) {
+            LOGGER.error("Error reading bank index", ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Optional.empty();
+        }
+    }
+
+    private Map<String, Entry> rebuild() {
+        var result = Misc.time(() -> {
+            Map<String, Entry> rebuilt = new TreeMap<>();
+            for (String id : this.backend.findAllIds()) {
+                Optional<Long> modified = getModifiedTime(this.backend.getMetadataPath(id));
+                Optional<Metadata> metadata = this.backend.loadMetadata(id);
+                if (modified.isEmpty() || metadata.isEmpty()) continue;
+                rebuilt.put(id, new Entry(
+                        Optional.ofNullable(metadata.get().getName()),
+                        metadata.get().getLastModified(),
+                        modified.get(),
+                        this.backend.getStoredSize(id),
+                        Optional.empty()));
+            }
+            return rebuilt;
+        });
+        LOGGER.info("Rebuilt bank index with {} banks in {}ns", result.getFirst().size(), result.getSecond());
+
+        this.entries = result.getFirst();
+        // just read from the directory, so already up to date
+        this.validated = true;
+        this.lastValidatedMillis = Util.getMillis();
+        this.write();
+        return result.getFirst();
+    }
+
+    private void write() {
+        if (this.entries == null) return;
+        Path path = this.backend.getIndexPath();
+        try {
+            Optional<JsonElement> json = CODEC.encodeStart(JsonOps.INSTANCE, this.entries)
+                    .resultOrPartial(Util.prefix("Error encoding bank index", LOGGER::error));
+            if (json.isPresent()) FileUtil.writeStringAtomically(path, FileUtil.gson().toJson(json.get()));
+        } catch (IOException ex) {
+            LOGGER.error("Error saving bank index", ex);
+        }
+    }
+
+    private static Optional<Long> getModifiedTime(Path path) {
+        try {
+            return Optional.of(Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param name             User-facing name of the bank.
+     * @param lastModified     Last modified time from the bank's metadata.
+     * @param metadataModified Modified time of the bank's metadata file when this entry was made, in milliseconds.
+     * @param size             Total size of the bank's files in bytes.
+     * @param memoryCounts     Number of memories in each key, or empty if not known.
+     */
+    private record Entry(
+            Optional<String> name,
+            Instant lastModified,
+            long metadataModified,
+            long size,
+            Optional<Map<ResourceLocation, Integer>> memoryCounts) {
+        private static final Codec<Entry> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Codec.STRING.optionalFieldOf("name").forGetter(Entry::name),
+                ExtraCodecs.INSTANT_ISO8601.fieldOf("lastModified").forGetter(Entry::lastModified),
+                Codec.LONG.fieldOf("metadataModified").forGetter(Entry::metadataModified),
+                Codec.LONG.fieldOf("size").forGetter(Entry::size),
+                Codec.unboundedMap(ResourceLocation.CODEC, Codec.INT).optionalFieldOf("memoryCounts").forGetter(Entry::memoryCounts)
+        ).apply(instance, Entry::new));
+
+        private BankSummary toSummary(String id) {
+            return new BankSummary(
+                    id,
+                    name.orElse(null),
+                    lastModified,
+                    OptionalLong.of(size),
+                    memoryCounts.map(counts -> OptionalInt.of(counts.values().stream().mapToInt(Integer::intValue).sum()))
+                            .orElse(OptionalInt.empty()));
+        }
+    }
+}
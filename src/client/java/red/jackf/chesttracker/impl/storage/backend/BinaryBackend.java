@@ -0,0 +1,284 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.DynamicOps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
+import red.jackf.chesttracker.impl.util.FileUtil;
+import red.jackf.chesttracker.impl.util.Strings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>Stores each memory key as a binary segment, read through a memory-mapped buffer.</p>
+ *
+ * <p>A segment starts with a header and an offset table, mapping each memory's position to its record in the file.
+ * Each record holds the memory's details and its items as separate NBT compounds. On load, only the details are
+ * decoded; the items are decoded from the mapped file when first needed by a search, count or tooltip. Items that were
+ * never decoded are copied directly to the new file when a key is saved.</p>
+ *
+ * <p>Segment files are given a new name on each save, as mapped files can't be replaced on some platforms while still
+ * in use. Old segments are deleted after the manifest is updated, or on the next load if still mapped.</p>
+ */
+public class BinaryBackend extends FileBasedBackend {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/Binary");
+    private static final int MAGIC = 0x4354424B; // CTBK
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int TABLE_ENTRY_SIZE = 16;
+    private static final String ITEMS = "items";
+    private static final String EMPTY = "empty";
+
+    private static final AtomicLong GENERATION = new AtomicLong(System.currentTimeMillis());
+
+    @Override
+    public String extension() {
+        return ".bin";
+    }
+
+    // history would decode every changed memory's items, which this format avoids
+    @Override
+    public boolean recordsHistory() {
+        return false;
+    }
+
+    @Nullable
+    @Override
+    public MemoryBankImpl load(String id, @Nullable HolderLookup.Provider registries) {
+        // a migration may be writing a segment not yet in the manifest
+        migrator.cancel(id);
+        removeUnusedSegments(id);
+        return super.load(id, registries);
+    }
+
+    // no single-file layout for this format
+    @Override
+    protected Optional<Map<ResourceLocation, MemoryKeyImpl>> loadSingleFile(Path path, @Nullable HolderLookup.Provider registries) {
+        return Optional.empty();
+    }
+
+    @Override
+    protected Optional<MemoryKeyImpl> loadSegment(Path path, @Nullable HolderLookup.Provider registries) {
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Optional.of(readSegment(buffer, getOps(registries)));
+        } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            LOGGER.error("Error loading %s".formatted(path), ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    protected boolean saveSegment(Path path, MemoryKeyImpl key, @Nullable HolderLookup.Provider registries) {
+        try {
+            byte[] segment = writeSegment(key, getOps(registries));
+            FileUtil.writeAtomically(path, out -> out.write(segment));
+            return true;
+        } catch (IOException ex) {
+            LOGGER.error("Error saving memories to %s".formatted(path), ex);
+            return false;
+        }
+    }
+
+    @Override
+    protected String getSegmentFileName(ResourceLocation keyId) {
+        return "%s/%s.%s%s".formatted(keyId.getNamespace(), keyId.getPath(), Long.toString(GENERATION.incrementAndGet(), 36), extension());
+    }
+
+    private static MemoryKeyImpl readSegment(ByteBuffer buffer, DynamicOps<Tag> ops) throws IOException {
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a binary memory segment");
+        int formatVersion = buffer.getInt(4);
+        if (formatVersion != FORMAT_VERSION) throw new IOException("Unknown segment format version: " + formatVersion);
+        final int dataVersion = buffer.getInt(8);
+        final int count = buffer.getInt(12);
+        final int overridesOffset = buffer.getInt(16);
+
+        Map<BlockPos, Memory> memories = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * TABLE_ENTRY_SIZE;
+            BlockPos pos = BlockPos.of(buffer.getLong(entry));
+            ByteBuffer record = buffer.slice(buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+            memories.put(pos, readMemory(record, pos, dataVersion, ops));
+        }
+
+        CompoundTag overridesTag = MemoryTags.fromBytes(getBytes(buffer.slice(overridesOffset, buffer.limit() - overridesOffset)));
+        Map<BlockPos, OverrideInfo> overrides = MemoryTags.unwrap(MemoryKeyImpl.Codecs.OVERRIDES_MAP.parse(ops, overridesTag), "Invalid overrides");
+
+        return new MemoryKeyImpl(memories, overrides);
+    }
+
+    private static Memory readMemory(ByteBuffer record, BlockPos pos, int dataVersion, DynamicOps<Tag> ops) throws IOException {
+        int detailsLength = record.getInt(0);
+        CompoundTag details = MemoryTags.fromBytes(getBytes(record.slice(4, detailsLength)));
+        ByteBuffer items = record.slice(4 + detailsLength, record.limit() - 4 - detailsLength);
+
+        // older data needs the whole memory to be fixed, so decode it straight away
+        if (dataVersion < Types.getCurrentVersion()) {
+            CompoundTag full = details.copy();
+            full.remove(EMPTY);
+            full.put(ITEMS, MemoryTags.fromBytes(getBytes(items)).getList(ITEMS, Tag.TAG_COMPOUND));
+            Tag fixed = MemoryTags.fix(full, pos, dataVersion, ops);
+            return MemoryTags.unwrap(Memory.CODEC.parse(ops, fixed), "Invalid memory at " + pos.toShortString());
+        }
+
+        boolean empty = details.getBoolean(EMPTY);
+        details.remove(EMPTY);
+        details.put(ITEMS, new ListTag());
+        Memory decoded = MemoryTags.unwrap(Memory.CODEC.parse(ops, details), "Invalid memory at " + pos.toShortString());
+
+        return new Memory(
+                new MappedItems(items, pos, ops),
+                empty,
+                decoded.savedName(),
+                decoded.otherPositions(),
+                decoded.container(),
+                decoded.loadedTimestamp(),
+                decoded.inGameTimestamp(),
+                decoded.realTimestamp()
+        );
+    }
+
+    private static byte[] writeSegment(MemoryKeyImpl key, DynamicOps<Tag> ops) throws IOException {
+        Map<BlockPos, Memory> memories = key.getMemories();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+
+        int tableEnd = HEADER_SIZE + memories.size() * TABLE_ENTRY_SIZE;
+        ByteBuffer table = ByteBuffer.allocate(tableEnd - HEADER_SIZE);
+
+        for (Map.Entry<BlockPos, Memory> entry : memories.entrySet()) {
+            int start = records.size();
+            writeMemory(recordsOut, entry.getKey(), entry.getValue(), ops);
+            table.putLong(entry.getKey().asLong());
+            table.putInt(tableEnd + start);
+            table.putInt(records.size() - start);
+        }
+
+        Tag overridesTag = MemoryTags.unwrap(MemoryKeyImpl.Codecs.OVERRIDES_MAP.encodeStart(ops, key.overrides()), "Error encoding overrides");
+        if (!(overridesTag instanceof CompoundTag overridesCompound)) throw new IOException("Overrides not encoded as a compound tag");
+        int overridesOffset = tableEnd + records.size();
+        recordsOut.write(MemoryTags.toBytes(overridesCompound));
+
+        ByteArrayOutputStream segment = new ByteArrayOutputStream(tableEnd + records.size());
+        DataOutputStream out = new DataOutputStream(segment);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(Types.getCurrentVersion());
+        out.writeInt(memories.size());
+        out.writeInt(overridesOffset);
+        out.write(table.array());
+        records.writeTo(out);
+        return segment.toByteArray();
+    }
+
+    private static void writeMemory(DataOutputStream out, BlockPos pos, Memory memory, DynamicOps<Tag> ops) throws IOException {
+        byte[] items;
+
+        // copy straight across if never decoded
+        if (memory.pendingItems() instanceof MappedItems mapped) {
+            items = getBytes(mapped.items());
+        } else {
+            Tag itemsTag = MemoryTags.unwrap(ItemStack.CODEC.listOf().encodeStart(ops, memory.items()), "Error encoding items at " + pos.toShortString());
+            CompoundTag itemsCompound = new CompoundTag();
+            itemsCompound.put(ITEMS, itemsTag);
+            items = MemoryTags.toBytes(itemsCompound);
+        }
+
+        // encode details without items; decoding items separately is the point of this format
+        Memory details = new Memory(
+                List.of(),
+                memory.savedName(),
+                memory.otherPositions(),
+                memory.container(),
+                memory.loadedTimestamp(),
+                memory.inGameTimestamp(),
+                memory.realTimestamp()
+        );
+        Tag detailsTag = MemoryTags.unwrap(Memory.CODEC.encodeStart(ops, details), "Error encoding memory at " + pos.toShortString());
+        if (!(detailsTag instanceof CompoundTag detailsCompound)) throw new IOException("Memory not encoded as a compound tag");
+        detailsCompound.remove(ITEMS);
+        detailsCompound.putBoolean(EMPTY, memory.isEmpty());
+        byte[] detailsBytes = MemoryTags.toBytes(detailsCompound);
+
+        out.writeInt(detailsBytes.length);
+        out.write(detailsBytes);
+        out.write(items);
+    }
+
+    /**
+     * Deletes segment files not referenced by the manifest, such as ones that were still mapped when replaced.
+     */
+    private void removeUnusedSegments(String id) {
+        Path segmentDirectory = getSegmentDirectory(id);
+        Optional<SegmentManifest> manifest = loadManifest(id);
+        if (manifest.isEmpty()) return;
+
+        Set<Path> used = new HashSet<>();
+        manifest.get().segments().values().forEach(file -> used.add(segmentDirectory.resolve(file)));
+
+        try (var stream = Files.walk(segmentDirectory)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(extension()) && !used.contains(path))
+                    .forEach(path -> {
+                        LOGGER.debug("Removing unused segment {}", Strings.formatPath(segmentDirectory.relativize(path)));
+                        deleteIfPresent(path);
+                    });
+        } catch (IOException ex) {
+            LOGGER.error("Error removing unused segments for {}", id, ex);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), bytes);
+        return bytes;
+    }
+
+    private static DynamicOps<Tag> getOps(@Nullable HolderLookup.Provider registries) {
+        return registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
+    }
+
+    /**
+     * Items for a memory that are decoded from the mapped segment on first use.
+     */
+    private record MappedItems(ByteBuffer items, BlockPos pos, DynamicOps<Tag> ops) implements Supplier<List<ItemStack>> {
+        @Override
+        public List<ItemStack> get() {
+            try {
+                CompoundTag tag = MemoryTags.fromBytes(getBytes(items));
+                return MemoryTags.unwrap(ItemStack.CODEC.listOf().parse(ops, tag.getList(ITEMS, Tag.TAG_COMPOUND)), "Invalid items");
+            } catch (IOException | IndexOutOfBoundsException ex) {
+                LOGGER.error("Error decoding items for memory at {}", pos.toShortString(), ex);
+                return List.of();
+            }
+        }
+    }
+}
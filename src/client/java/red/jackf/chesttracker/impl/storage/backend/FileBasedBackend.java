@@ -4,14 +4,24 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 import com.mojang.serialization.JsonOps;
 import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.core.HolderLookup;
 import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
 import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.storage.BankSummary;
+import red.jackf.chesttracker.impl.storage.SaveScheduler;
 import red.jackf.chesttracker.impl.util.Constants;
 import red.jackf.chesttracker.impl.util.FileUtil;
+import red.jackf.chesttracker.impl.util.Misc;
 import red.jackf.chesttracker.impl.util.Strings;
 
 import java.io.IOException;
@@ -19,19 +29,239 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static net.minecraft.network.chat.Component.translatable;
 
+/**
+ * <p>Base for backends that store memory banks as files in {@link Constants#STORAGE_DIR}.</p>
+ *
+ * <p>Each bank is stored as a JSON metadata file, and a directory of segments containing one file per memory key with
+ * a {@link SegmentManifest}. Segments are only read when their key is first accessed, and only keys marked dirty in
+ * the bank are rewritten on save. Banks in the older single-file layout are loaded in full and moved to the segmented
+ * layout on their next save.</p>
+ *
+ * <p>Stored banks are listed from a {@link BankIndex}, which is updated on each save. Segments written at an older
+ * data version are rewritten in the background by a {@link SegmentMigrator} when their bank is loaded.</p>
+ *
+ * <p>Each save also records what changed in the bank's {@link BankHistory}, so previous states can be reconstructed,
+ * unless the backend opts out with {@link #recordsHistory()}.</p>
+ */
 public abstract class FileBasedBackend implements Backend {
     public static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/File Storage");
 
+    final BankIndex index = new BankIndex(this);
+    final SegmentMigrator migrator = new SegmentMigrator(this);
+    final BankHistory history = new BankHistory(this);
+
+    /**
+     * Held while reading a lazily loaded key's segment, or while a migration replaces one.
+     */
+    final Object segmentLock = new Object();
+
+    @Nullable
+    @Override
+    public MemoryBankImpl load(String id, @Nullable HolderLookup.Provider registries) {
+        migrator.cancel(id);
+
+        Optional<Metadata> metadata = loadMetadata(id);
+        if (metadata.isEmpty()) return null;
+
+        // keys are loaded when first accessed
+        Optional<SegmentManifest> manifest = loadManifest(id);
+        if (manifest.isPresent()) {
+            LOGGER.debug("Found {} segments for {}", manifest.get().segments().size(), id);
+            migrator.schedule(id, manifest.get().getOutdatedKeys(), registries);
+            MemoryBankImpl bank = new MemoryBankImpl(metadata.get(), manifest.get().segments().keySet(), new MemoryBankImpl.KeyLoader() {
+                @Override
+                public Optional<MemoryKeyImpl> load(ResourceLocation keyId, @Nullable HolderLookup.Provider registries) {
+                    return loadKey(id, keyId, registries);
+                }
+
+                @Override
+                public Map<ResourceLocation, MemoryKeyImpl> loadAll(Collection<ResourceLocation> keyIds, @Nullable HolderLookup.Provider registries) {
+                    return loadKeys(id, keyIds, registries);
+                }
+            });
+            bank.setRegistries(registries);
+            return bank;
+        }
+
+        // older single file layout, or a bank with no memories yet
+        Path legacyPath = getLegacyPath(id);
+        var result = Misc.time(() -> loadSingleFile(legacyPath, registries));
+        LOGGER.debug("Loaded {} in {}ns", legacyPath, result.getSecond());
+        MemoryBankImpl bank = new MemoryBankImpl(metadata.get(), result.getFirst().orElseGet(HashMap::new));
+        bank.setRegistries(registries);
+        bank.markAllDirty();
+        return bank;
+    }
+
+    /**
+     * Loads a single key's segment for a lazily loaded bank. Called from the client thread when the key is first
+     * accessed, or from a background load before the bank is handed back.
+     */
+    protected Optional<MemoryKeyImpl> loadKey(String id, ResourceLocation keyId, @Nullable HolderLookup.Provider registries) {
+        awaitSaves(id);
+
+        synchronized (segmentLock) {
+            Optional<String> file = loadManifest(id).map(manifest -> manifest.segments().get(keyId));
+            if (file.isEmpty()) return Optional.empty();
+
+            Path path = getSegmentDirectory(id).resolve(file.get());
+            var result = Misc.time(() -> loadSegment(path, registries));
+            LOGGER.debug("Loaded segment {} in {}ns", path, result.getSecond());
+            return result.getFirst();
+        }
+    }
+
+    // a running save may be replacing a segment; background loads already wait for saves before starting
+    private static void awaitSaves(String id) {
+        Minecraft minecraft = Minecraft.getInstance();
+        if (minecraft == null || minecraft.isSameThread()) SaveScheduler.await(id);
+    }
+
+    /**
+     * Loads several keys' segments for a lazily loaded bank at once, such as when the whole bank is needed.
+     */
+    protected Map<ResourceLocation, MemoryKeyImpl> loadKeys(String id, Collection<ResourceLocation> keyIds, @Nullable HolderLookup.Provider registries) {
+        awaitSaves(id);
+
+        synchronized (segmentLock) {
+            Map<ResourceLocation, String> segments = loadManifest(id).map(SegmentManifest::segments).orElse(Map.of());
+            Map<ResourceLocation, String> files = new HashMap<>();
+            for (ResourceLocation keyId : keyIds) {
+                String file = segments.get(keyId);
+                if (file != null) files.put(keyId, file);
+            }
+
+            var result = Misc.time(() -> loadSegments(getSegmentDirectory(id), files, registries));
+            LOGGER.debug("Loaded {} segments for {} in {}ns", result.getFirst().size(), id, result.getSecond());
+            return result.getFirst();
+        }
+    }
+
+    /**
+     * Loads a set of segments, decoding them in parallel as each is independent.
+     *
+     * @param segmentDirectory Directory the segments are in.
+     * @param files            Map of key IDs to segment file names, relative to the segment directory.
+     * @param registries       Registry access for decoding items.
+     * @return The loaded keys. Keys that are missing or errored are left out.
+     */
+    protected Map<ResourceLocation, MemoryKeyImpl> loadSegments(Path segmentDirectory, Map<ResourceLocation, String> files, @Nullable HolderLookup.Provider registries) {
+        return files.entrySet().parallelStream()
+                .flatMap(entry -> loadSegment(segmentDirectory.resolve(entry.getValue()), registries)
+                        .map(key -> Map.entry(entry.getKey(), key))
+                        .stream())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    @Override
+    public boolean save(MemoryBankImpl memoryBank, @Nullable HolderLookup.Provider registries) {
+        LOGGER.debug("Saving {}", memoryBank.getId());
+
+        memoryBank.getMetadata().updateModified();
+        if (!writeMetadata(memoryBank.getId(), memoryBank.getMetadata())) return false;
+
+        Path segmentDirectory = getSegmentDirectory(memoryBank.getId());
+        SegmentManifest manifest = loadManifest(memoryBank.getId()).orElseGet(SegmentManifest::empty);
+        Map<ResourceLocation, String> segments = new HashMap<>(manifest.segments());
+        Map<ResourceLocation, Integer> dataVersions = new HashMap<>(manifest.dataVersions());
+        // keys loaded when the snapshot was taken are counted too, so banks from before counts were kept catch up
+        Map<ResourceLocation, Integer> memoryCounts = new HashMap<>(manifest.memoryCounts());
+        memoryCounts.putAll(memoryBank.getLoadedMemoryCounts());
+        // only deleted once the new manifest is written
+        List<String> obsolete = new ArrayList<>();
+        Map<ResourceLocation, BankHistory.KeyDelta> changes = new HashMap<>();
+        final boolean recordHistory = recordsHistory() && BankHistory.isEnabled();
+        boolean success = true;
+
+        for (ResourceLocation keyId : memoryBank.getDirtyKeys()) {
+            Optional<MemoryKeyImpl> key = memoryBank.getKeyInternal(keyId);
+
+            if (recordHistory) {
+                Optional<BankHistory.KeyDelta> delta = key.map(BankHistory.KeyDelta::of)
+                        .or(() -> memoryBank.getRemovedKey(keyId).map(BankHistory.KeyDelta::ofRemoved));
+                if (delta.isPresent() && !delta.get().isEmpty()) changes.put(keyId, delta.get());
+            }
+
+            if (key.isPresent()) {
+                String fileName = getSegmentFileName(keyId);
+                if (saveSegment(segmentDirectory.resolve(fileName), key.get(), registries)) {
+                    String previous = segments.put(keyId, fileName);
+                    dataVersions.put(keyId, Types.getCurrentVersion());
+                    if (previous != null && !previous.equals(fileName)) obsolete.add(previous);
+                } else {
+                    // the stored segment is left as it was, so its count isn't known
+                    memoryCounts.remove(keyId);
+                    success = false;
+                }
+            } else {
+                String previous = segments.remove(keyId);
+                dataVersions.remove(keyId);
+                memoryCounts.remove(keyId);
+                if (previous != null) obsolete.add(previous);
+            }
+        }
+
+        memoryCounts.keySet().retainAll(segments.keySet());
+        SegmentManifest saved = new SegmentManifest(segments, dataVersions, memoryCounts);
+        if (!saveManifest(memoryBank.getId(), saved)) return false;
+        obsolete.forEach(file -> deleteIfPresent(segmentDirectory.resolve(file)));
+        if (recordHistory) history.record(memoryBank.getId(), changes, registries);
+
+        // moved to segmented layout
+        if (success) deleteIfPresent(getLegacyPath(memoryBank.getId()));
+
+        index.onSaved(memoryBank, saved.getMemoryCounts());
+
+        return success;
+    }
+
+    /**
+     * @return History of previous saves for banks using this backend.
+     */
+    public BankHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Whether saves with this backend are recorded in its {@link BankHistory}. Backends whose segments don't hold the
+     * whole state of a bank, or that have their own format for past changes, should return false.
+     *
+     * @return Whether this backend keeps history.
+     */
+    public boolean recordsHistory() {
+        return true;
+    }
+
+    @Override
+    public boolean savesOffThread() {
+        return true;
+    }
+
     @Override
     public Collection<String> getAllIds() {
+        return index.getIds();
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return index.getSummary(id).isPresent();
+    }
+
+    @Override
+    public List<BankSummary> getSummaries() {
+        return index.getSummaries();
+    }
+
+    /**
+     * Walks the storage directory for all bank IDs, used when rebuilding the index.
+     */
+    Collection<String> findAllIds() {
         if (!Files.isDirectory(Constants.STORAGE_DIR)) return Collections.emptyList();
         try (var stream = Files.walk(Constants.STORAGE_DIR)) {
             return stream.filter(path -> path.getFileName().toString().endsWith(metadataExtension()))
@@ -46,26 +276,36 @@ public abstract class FileBasedBackend implements Backend {
 
     @Override
     public void delete(String id) {
+        migrator.cancel(id);
         getRelevantPaths(id).forEach(path -> {
-            if (Files.isRegularFile(path)) {
-                try {
+            try {
+                if (Files.isRegularFile(path)) {
                     Files.delete(path);
                     LOGGER.info("Deleted {}", path);
-                } catch (IOException e) {
-                    LOGGER.error(e);
+                } else if (Files.isDirectory(path)) {
+                    FileUtils.deleteDirectory(path.toFile());
+                    LOGGER.info("Deleted {}", path);
                 }
+            } catch (IOException e) {
+                LOGGER.error(e);
             }
         });
+        index.onDeleted(id);
     }
 
     public boolean saveMetadata(String id, Metadata metadata) {
-        Path path = Constants.STORAGE_DIR.resolve(id + metadataExtension());
+        if (!writeMetadata(id, metadata)) return false;
+        index.onMetadataSaved(id, metadata);
+        return true;
+    }
+
+    protected boolean writeMetadata(String id, Metadata metadata) {
+        Path path = getMetadataPath(id);
         try {
-            Files.createDirectories(path.getParent());
             Optional<JsonElement> metaJson = Metadata.CODEC.encodeStart(JsonOps.INSTANCE, metadata)
                     .resultOrPartial(Util.prefix("Error encoding metadata", LOGGER::error));
             if (metaJson.isPresent()) {
-                FileUtils.write(path.toFile(), FileUtil.gson().toJson(metaJson.get()), StandardCharsets.UTF_8);
+                FileUtil.writeStringAtomically(path, FileUtil.gson().toJson(metaJson.get()));
                 return true;
             } else {
                 LOGGER.error("Unknown error encoding metadata");
@@ -78,7 +318,7 @@ public abstract class FileBasedBackend implements Backend {
 
     @Override
     public Optional<Metadata> loadMetadata(String id) {
-        Path path = Constants.STORAGE_DIR.resolve(id + metadataExtension());
+        Path path = getMetadataPath(id);
         if (Files.isRegularFile(path)) {
             try {
                 var str = FileUtils.readFileToString(path.toFile(), StandardCharsets.UTF_8);
@@ -98,26 +338,132 @@ public abstract class FileBasedBackend implements Backend {
         return Optional.empty();
     }
 
+    protected Optional<SegmentManifest> loadManifest(String id) {
+        Path path = getSegmentDirectory(id).resolve(SegmentManifest.FILE_NAME);
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try {
+            var str = FileUtils.readFileToString(path.toFile(), StandardCharsets.UTF_8);
+            var json = FileUtil.gson().fromJson(str, JsonElement.class);
+            return SegmentManifest.CODEC.parse(JsonOps.INSTANCE, json)
+                    .resultOrPartial(Util.prefix("Invalid segment manifest: " + id, LOGGER::error));
+        } catch (JsonParseException | IOException ex) {
+            LOGGER.error("Error decoding segment manifest", ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Optional.empty();
+        }
+    }
+
+    protected boolean saveManifest(String id, SegmentManifest manifest) {
+        Path path = getSegmentDirectory(id).resolve(SegmentManifest.FILE_NAME);
+        try {
+            Optional<JsonElement> json = SegmentManifest.CODEC.encodeStart(JsonOps.INSTANCE, manifest)
+                    .resultOrPartial(Util.prefix("Error encoding segment manifest", LOGGER::error));
+            if (json.isPresent()) {
+                FileUtil.writeStringAtomically(path, FileUtil.gson().toJson(json.get()));
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error saving segment manifest", e);
+        }
+        return false;
+    }
+
     @Override
     public Component getDescriptionLabel(String memoryBankId) {
-        long size = getRelevantPaths(memoryBankId).stream().mapToLong(FileBasedBackend::getSizeIfPresent).sum();
-        return translatable("chesttracker.storage.json.fileSize", Strings.magnitudeSpace(size, 2) + "B");
+        Optional<BankSummary> summary = index.getSummary(memoryBankId);
+        long size = summary.isPresent() && summary.get().size().isPresent() ? summary.get().size().getAsLong() : getStoredSize(memoryBankId);
+        Component label = translatable("chesttracker.storage.json.fileSize", Strings.magnitudeSpace(size, 2) + "B");
+        if (summary.isPresent() && summary.get().memoryCount().isPresent()) {
+            return translatable("chesttracker.storage.fileSizeAndCount", label, summary.get().memoryCount().getAsInt());
+        }
+        return label;
     }
 
     public abstract String extension();
 
+    /**
+     * Load a whole memory bank's keys from a file in the older single-file layout.
+     *
+     * @param path       Path to the single file. May not exist.
+     * @param registries Registry access for decoding items.
+     * @return The loaded keys, or an empty optional if not present or errored.
+     */
+    protected abstract Optional<Map<ResourceLocation, MemoryKeyImpl>> loadSingleFile(Path path, @Nullable HolderLookup.Provider registries);
+
+    /**
+     * Load a single memory key from a segment file.
+     *
+     * @param path       Path to the segment. May not exist.
+     * @param registries Registry access for decoding items.
+     * @return The loaded key, or an empty optional if not present or errored.
+     */
+    protected abstract Optional<MemoryKeyImpl> loadSegment(Path path, @Nullable HolderLookup.Provider registries);
+
+    /**
+     * Save a single memory key to a segment file, creating parent directories if needed.
+     *
+     * @param path       Path to the segment.
+     * @param key        Memory key to save.
+     * @param registries Registry access for encoding items.
+     * @return Whether the save was successful.
+     */
+    protected abstract boolean saveSegment(Path path, MemoryKeyImpl key, @Nullable HolderLookup.Provider registries);
+
     protected String metadataExtension() {
         return extension() + ".meta";
     }
 
+    protected Path getMetadataPath(String id) {
+        return Constants.STORAGE_DIR.resolve(id + metadataExtension());
+    }
+
+    protected Path getIndexPath() {
+        return Constants.STORAGE_DIR.resolve("bank_index" + extension() + ".json");
+    }
+
+    protected Path getSegmentDirectory(String id) {
+        return Constants.STORAGE_DIR.resolve(id + extension() + ".keys");
+    }
+
+    /**
+     * Returns the file name, relative to the segment directory, to save a key's segment to. Backends may return a new
+     * name each save; the previous file is deleted once the manifest has been updated.
+     */
+    protected String getSegmentFileName(ResourceLocation keyId) {
+        return keyId.getNamespace() + "/" + keyId.getPath() + extension();
+    }
+
+    protected Path getLegacyPath(String id) {
+        return Constants.STORAGE_DIR.resolve(id + extension());
+    }
+
+    /**
+     * @return Total size in bytes of all files stored for a memory bank.
+     */
+    protected long getStoredSize(String id) {
+        return getRelevantPaths(id).stream().mapToLong(FileBasedBackend::getSizeIfPresent).sum();
+    }
+
     protected List<Path> getRelevantPaths(String id) {
         return List.of(
-                Constants.STORAGE_DIR.resolve(id + extension()),
-                Constants.STORAGE_DIR.resolve(id + metadataExtension())
+                getLegacyPath(id),
+                Constants.STORAGE_DIR.resolve(id + metadataExtension()),
+                getSegmentDirectory(id),
+                history.getHistoryDirectory(id)
         );
     }
 
+    protected static void deleteIfPresent(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.error("Error deleting {}", path, e);
+        }
+    }
+
     private static long getSizeIfPresent(Path path) {
-        return Files.isRegularFile(path) ? FileUtils.sizeOf(path.toFile()) : 0L;
+        if (Files.isRegularFile(path)) return FileUtils.sizeOf(path.toFile());
+        if (Files.isDirectory(path)) return FileUtils.sizeOfDirectory(path.toFile());
+        return 0L;
     }
 }
@@ -16,7 +16,9 @@ public class GameMemoryBackend implements Backend {
     @Nullable
     @Override
     public MemoryBankImpl load(String id, HolderLookup.Provider registries) {
-        return storage.get(id);
+        MemoryBankImpl bank = storage.get(id);
+        if (bank != null) bank.setRegistries(registries);
+        return bank;
     }
 
     @Override
@@ -0,0 +1,194 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.DynamicOps;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.util.FileUtil;
+import red.jackf.chesttracker.impl.util.Misc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * <p>Stores memory banks as a base of NBT segments, plus an append-only journal of changes since the base was written.</p>
+ *
+ * <p>Saving only appends the positions that changed since the last save, so it is cheap enough to run every few
+ * seconds. Once the journal grows past {@link #COMPACTION_THRESHOLD}, the keys it touches are rewritten into the base
+ * and the journal is cleared; this runs on the storage thread as part of a save. Loading reads the base, then replays
+ * the journal over it.</p>
+ */
+public class JournalBackend extends NbtBackend {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/Journal");
+    private static final String JOURNAL_FILE_NAME = "journal.log";
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024; // 1 MiB
+
+    @Nullable
+    @Override
+    public MemoryBankImpl load(String id, @Nullable HolderLookup.Provider registries) {
+        migrator.cancel(id);
+
+        Optional<Metadata> metadata = loadMetadata(id);
+        if (metadata.isEmpty()) return null;
+
+        Path segmentDirectory = getSegmentDirectory(id);
+        Optional<SegmentManifest> manifest = loadManifest(id);
+        var result = Misc.time(() -> {
+            Map<ResourceLocation, MemoryKeyImpl> keys = manifest
+                    .map(m -> loadSegments(segmentDirectory, m.segments(), registries))
+                    .orElseGet(HashMap::new);
+
+            readJournal(id, registries).forEach(entry -> MemoryJournal.apply(keys, entry));
+            keys.values().removeIf(MemoryKeyImpl::isEmpty);
+            return keys;
+        });
+        LOGGER.debug("Loaded {} keys from {} in {}ns", result.getFirst().size(), segmentDirectory, result.getSecond());
+
+        // the journal is always replayed, but the base can be brought up to date
+        manifest.ifPresent(m -> migrator.schedule(id, m.getOutdatedKeys(), registries));
+
+        MemoryBankImpl bank = new MemoryBankImpl(metadata.get(), result.getFirst());
+        bank.setRegistries(registries);
+        return bank;
+    }
+
+    @Override
+    public boolean save(MemoryBankImpl memoryBank, @Nullable HolderLookup.Provider registries) {
+        LOGGER.debug("Saving {}", memoryBank.getId());
+
+        if (!writeMetadata(memoryBank.getId(), memoryBank.getMetadata())) return false;
+
+        List<MemoryJournal.Entry> entries = MemoryJournal.collect(memoryBank);
+        // every key of a journalled bank is loaded, so the counts are complete
+        final Optional<Map<ResourceLocation, Integer>> memoryCounts = Optional.of(memoryBank.getLoadedMemoryCounts());
+        if (entries.isEmpty()) {
+            index.onSaved(memoryBank, memoryCounts);
+            return true;
+        }
+
+        // records are read at the journal's data version, so one from before a game update is folded into the base first
+        if (isJournalOutdated(memoryBank.getId())) {
+            LOGGER.debug("Compacting journal for {} from an older data version", memoryBank.getId());
+            if (!compact(memoryBank.getId(), memoryBank.getMetadata(), registries)) return false;
+        }
+
+        long journalSize;
+        try {
+            journalSize = MemoryJournal.append(getJournalPath(memoryBank.getId()), entries, getOps(registries));
+        } catch (IOException ex) {
+            LOGGER.error("Error appending to journal for {}", memoryBank.getId(), ex);
+            return false;
+        }
+
+        index.onSaved(memoryBank, memoryCounts);
+
+        // changes are safe in the journal at this point; a failed compaction is retried next save
+        if (journalSize > COMPACTION_THRESHOLD) {
+            var result = Misc.time(() -> compact(memoryBank.getId(), memoryBank.getMetadata(), registries));
+            if (result.getFirst())
+                LOGGER.debug("Compacted journal for {} in {}ns", memoryBank.getId(), result.getSecond());
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean savesIncrementally() {
+        return true;
+    }
+
+    // the base segments lag behind the journal, so can't be used to reconstruct past states
+    @Override
+    public boolean recordsHistory() {
+        return false;
+    }
+
+    /**
+     * Rewrites each key touched by the journal into the base segments, then deletes the journal. If interrupted, the
+     * journal is kept and replayed over the partly updated base, which gives the same result.
+     */
+    private boolean compact(String id, Metadata metadata, @Nullable HolderLookup.Provider registries) {
+        List<MemoryJournal.Entry> entries = readJournal(id, registries);
+
+        Set<ResourceLocation> touched = new HashSet<>();
+        entries.forEach(entry -> touched.add(entry.keyId()));
+
+        Path segmentDirectory = getSegmentDirectory(id);
+        Map<ResourceLocation, String> segments = loadManifest(id).map(SegmentManifest::segments).orElse(Map.of());
+        Map<ResourceLocation, MemoryKeyImpl> keys = new HashMap<>();
+        for (ResourceLocation keyId : touched) {
+            String file = segments.get(keyId);
+            if (file != null)
+                loadSegment(segmentDirectory.resolve(file), registries).ifPresent(key -> keys.put(keyId, key));
+        }
+
+        entries.forEach(entry -> MemoryJournal.apply(keys, entry));
+        keys.values().removeIf(MemoryKeyImpl::isEmpty);
+
+        MemoryBankImpl compacted = MemoryBankImpl.detached(metadata, keys);
+        compacted.setId(id);
+        touched.forEach(compacted::markDirty);
+
+        if (!super.save(compacted, registries)) return false;
+
+        try {
+            Files.deleteIfExists(getJournalPath(id));
+            return true;
+        } catch (IOException ex) {
+            LOGGER.error("Error deleting compacted journal for {}", id, ex);
+            return false;
+        }
+    }
+
+    private boolean isJournalOutdated(String id) {
+        try {
+            OptionalInt dataVersion = MemoryJournal.readDataVersion(getJournalPath(id));
+            return dataVersion.isPresent() && dataVersion.getAsInt() != Types.getCurrentVersion();
+        } catch (IOException ex) {
+            // compacting reads it properly, setting it aside if corrupt
+            return true;
+        }
+    }
+
+    private List<MemoryJournal.Entry> readJournal(String id, @Nullable HolderLookup.Provider registries) {
+        Path path = getJournalPath(id);
+        try {
+            return MemoryJournal.read(path, getOps(registries));
+        } catch (IOException ex) {
+            LOGGER.error("Error reading journal {}", path, ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Collections.emptyList();
+        }
+    }
+
+    private Path getJournalPath(String id) {
+        return getSegmentDirectory(id).resolve(JOURNAL_FILE_NAME);
+    }
+
+    // base segments are plain NBT
+    @Override
+    protected String getSegmentFileName(ResourceLocation keyId) {
+        return keyId.getNamespace() + "/" + keyId.getPath() + super.extension();
+    }
+
+    @Override
+    public String extension() {
+        return ".journal";
+    }
+
+    private static DynamicOps<Tag> getOps(@Nullable HolderLookup.Provider registries) {
+        return registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
+    }
+}
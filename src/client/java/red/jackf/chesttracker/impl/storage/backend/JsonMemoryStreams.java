@@ -0,0 +1,167 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.Dynamic;
+import com.mojang.serialization.DynamicOps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.ItemPalette;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
+import red.jackf.chesttracker.impl.util.ModCodecs;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Streaming reader and writer for memory keys in the JSON format. Memories are decoded and encoded one at a time, so
+ * only a single memory's JSON tree is held in memory at once instead of the whole bank.</p>
+ *
+ * <p>Keys are written with the data version first, so that each memory can be fixed independently on read. Keys that
+ * don't start with a data version (written before streaming was added, or in the 2.3.3 format) are buffered and
+ * decoded through {@link MemoryKeyImpl.Codecs#MAIN} as before.</p>
+ *
+ * <p>The key's {@link ItemPalette} is written before its memories, so that memories referencing it can be decoded as
+ * they are read.</p>
+ */
+class JsonMemoryStreams {
+    private static final String MEMORIES = "memories";
+    private static final String OVERRIDES = "overrides";
+    private static final String PALETTE = MemoryKeyImpl.Codecs.PALETTE;
+
+    private JsonMemoryStreams() {}
+
+    /**
+     * Reads a whole bank's worth of memory keys from a JSON object of key IDs to keys.
+     */
+    static Map<ResourceLocation, MemoryKeyImpl> readKeys(JsonReader reader, DynamicOps<JsonElement> ops) throws IOException {
+        Map<ResourceLocation, MemoryKeyImpl> keys = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            ResourceLocation keyId = ResourceLocation.tryParse(name);
+            if (keyId == null) throw new IOException("Invalid memory key ID: " + name);
+            keys.put(keyId, readKey(reader, ops));
+        }
+        reader.endObject();
+        return keys;
+    }
+
+    static MemoryKeyImpl readKey(JsonReader reader, DynamicOps<JsonElement> ops) throws IOException {
+        reader.beginObject();
+
+        String first = reader.hasNext() ? reader.nextName() : null;
+        if (!Types.VERSION_KEY.equals(first) || reader.peek() != JsonToken.NUMBER) {
+            // legacy layout; field order is unknown so buffer this key and use the codec
+            JsonObject buffered = new JsonObject();
+            if (first != null) buffered.add(first, JsonParser.parseReader(reader));
+            while (reader.hasNext())
+                buffered.add(reader.nextName(), JsonParser.parseReader(reader));
+            reader.endObject();
+            return unwrap(MemoryKeyImpl.Codecs.MAIN.parse(ops, buffered), "Invalid memory key");
+        }
+
+        final int version = reader.nextInt();
+        Codec<Memory> memoryCodec = Memory.CODEC;
+        Map<BlockPos, Memory> memories = new HashMap<>();
+        Map<BlockPos, OverrideInfo> overrides = Map.of();
+
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case PALETTE -> memoryCodec = Memory.codec(readPalette(JsonParser.parseReader(reader), version, ops).itemsCodec());
+                case MEMORIES -> {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String posString = reader.nextName();
+                        BlockPos pos = unwrap(ModCodecs.parseBlockPos(posString), "Invalid memory position");
+                        JsonElement memoryJson = JsonParser.parseReader(reader);
+                        memories.put(pos, readMemory(memoryJson, posString, version, memoryCodec, ops));
+                    }
+                    reader.endObject();
+                }
+                case OVERRIDES -> overrides = unwrap(MemoryKeyImpl.Codecs.OVERRIDES_MAP.parse(ops, JsonParser.parseReader(reader)), "Invalid overrides");
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new MemoryKeyImpl(memories, overrides);
+    }
+
+    static void writeKey(JsonWriter writer, Gson gson, MemoryKeyImpl key, DynamicOps<JsonElement> ops) throws IOException {
+        writer.beginObject();
+        writer.name(Types.VERSION_KEY).value(Types.getCurrentVersion());
+
+        ItemPalette palette = ItemPalette.collect(key.getMemories().values());
+        writer.name(PALETTE);
+        gson.toJson(unwrap(ItemPalette.CODEC.encodeStart(ops, palette), "Error encoding palette"), writer);
+
+        Codec<Memory> memoryCodec = Memory.codec(palette.itemsCodec());
+        writer.name(MEMORIES).beginObject();
+        for (Map.Entry<BlockPos, Memory> entry : key.getMemories().entrySet()) {
+            writer.name(ModCodecs.blockPosToString(entry.getKey()));
+            gson.toJson(unwrap(memoryCodec.encodeStart(ops, entry.getValue()), "Error encoding memory"), writer);
+        }
+        writer.endObject();
+
+        writer.name(OVERRIDES);
+        gson.toJson(unwrap(MemoryKeyImpl.Codecs.OVERRIDES_MAP.encodeStart(ops, key.overrides()), "Error encoding overrides"), writer);
+
+        writer.endObject();
+    }
+
+    // fixes a palette by wrapping it in an otherwise empty memory key, matching the registered DFU type
+    private static ItemPalette readPalette(JsonElement paletteJson, int version, DynamicOps<JsonElement> ops) throws IOException {
+        if (version < Types.getCurrentVersion()) {
+            JsonObject wrapper = new JsonObject();
+            wrapper.add(MEMORIES, new JsonObject());
+            wrapper.add(PALETTE, paletteJson);
+            wrapper.add(OVERRIDES, new JsonObject());
+
+            Dynamic<JsonElement> fixed = Types.update(Types.MEMORY_DATA, new Dynamic<>(ops, wrapper), version);
+            paletteJson = fixed.get(PALETTE).result()
+                    .map(Dynamic::getValue)
+                    .orElseThrow(() -> new IOException("Palette lost during data fixing"));
+        }
+
+        return unwrap(ItemPalette.CODEC.parse(ops, paletteJson), "Invalid palette");
+    }
+
+    // fixes a single memory by wrapping it as a single-entry memory key, matching the registered DFU type
+    private static Memory readMemory(JsonElement memoryJson, String posString, int version, Codec<Memory> codec, DynamicOps<JsonElement> ops) throws IOException {
+        if (version < Types.getCurrentVersion()) {
+            JsonObject memories = new JsonObject();
+            memories.add(posString, memoryJson);
+            JsonObject wrapper = new JsonObject();
+            wrapper.add(MEMORIES, memories);
+            wrapper.add(OVERRIDES, new JsonObject());
+
+            Dynamic<JsonElement> fixed = Types.update(Types.MEMORY_DATA, new Dynamic<>(ops, wrapper), version);
+            memoryJson = fixed.get(MEMORIES).get(posString).result()
+                    .map(Dynamic::getValue)
+                    .orElseThrow(() -> new IOException("Memory at %s lost during data fixing".formatted(posString)));
+        }
+
+        return unwrap(codec.parse(ops, memoryJson), "Invalid memory at " + posString);
+    }
+
+    private static <T> T unwrap(DataResult<T> result, String message) throws IOException {
+        if (result.isError()) {
+            //noinspection OptionalGetWithoutIsPresent
+            throw new IOException("%s: %s".formatted(message, result.error().get().message()));
+        }
+        //noinspection OptionalGetWithoutIsPresent
+        return result.result().get();
+    }
+}
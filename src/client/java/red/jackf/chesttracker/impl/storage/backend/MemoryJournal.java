@@ -0,0 +1,325 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.DynamicOps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.key.ManualMode;
+import red.jackf.chesttracker.impl.memory.key.OverrideInfo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Reads and writes the append-only journal files used by {@link JournalBackend}.</p>
+ *
+ * <p>A journal starts with a header containing a magic number, the journal format version, and the data version of the
+ * memories inside. This is followed by frames, each holding a record's length, the record, and a CRC32 of the record.
+ * A frame that is cut short or fails its checksum marks the end of the journal, which is expected if the game closed
+ * mid-write.</p>
+ *
+ * <p>All records in a journal are read at the header's data version, so records are only appended to a journal
+ * created at the current data version. Older journals need to be compacted first.</p>
+ *
+ * <p>Records hold the state of a position after a change, rather than the change itself. This means replaying doesn't
+ * re-run any filtering, and replaying a journal over a base that already contains some of its records is harmless.</p>
+ */
+class MemoryJournal {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/Journal");
+    private static final int MAGIC = 0x43544A4C; // CTJL
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte PUT_MEMORY = 1;
+    private static final byte REMOVE_MEMORY = 2;
+    private static final byte PUT_OVERRIDE = 3;
+    private static final byte REMOVE_OVERRIDE = 4;
+    private static final byte CLEAR_KEY = 5;
+
+    private MemoryJournal() {}
+
+    /**
+     * Collects the records needed to bring a journal up to date with a save snapshot. Only positions marked as changed
+     * in each dirty key are written; keys that are fully changed are cleared and written in full, and keys no longer
+     * present are cleared.
+     *
+     * @param snapshot Save snapshot from {@link MemoryBankImpl#createSaveSnapshot()}
+     * @return List of records to append, in order.
+     */
+    static List<Entry> collect(MemoryBankImpl snapshot) {
+        List<Entry> entries = new ArrayList<>();
+        for (ResourceLocation keyId : snapshot.getDirtyKeys()) {
+            Optional<MemoryKeyImpl> key = snapshot.getKeyInternal(keyId);
+            if (key.isEmpty()) {
+                entries.add(new ClearKey(keyId));
+            } else if (key.get().isAllChanged()) {
+                entries.add(new ClearKey(keyId));
+                key.get().getMemories().forEach((pos, memory) -> entries.add(new PutMemory(keyId, pos, memory)));
+                key.get().overrides().forEach((pos, override) -> entries.add(new PutOverride(keyId, pos, override)));
+            } else {
+                for (BlockPos pos : key.get().getChangedPositions()) {
+                    Memory memory = key.get().getMemories().get(pos);
+                    entries.add(memory != null ? new PutMemory(keyId, pos, memory) : new RemoveMemory(keyId, pos));
+                    OverrideInfo override = key.get().overrides().get(pos);
+                    entries.add(override != null ? new PutOverride(keyId, pos, override) : new RemoveOverride(keyId, pos));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Applies a record to a map of memory keys, creating keys as needed. Keys may be left empty afterwards.
+     */
+    static void apply(Map<ResourceLocation, MemoryKeyImpl> keys, Entry entry) {
+        switch (entry) {
+            case ClearKey clear -> keys.remove(clear.keyId());
+            case PutMemory put -> keys.computeIfAbsent(put.keyId(), id -> new MemoryKeyImpl()).restoreMemory(put.pos(), put.memory());
+            case PutOverride put -> keys.computeIfAbsent(put.keyId(), id -> new MemoryKeyImpl()).restoreOverride(put.pos(), put.override());
+            case RemoveMemory remove -> {
+                MemoryKeyImpl key = keys.get(remove.keyId());
+                if (key != null) key.restoreMemory(remove.pos(), null);
+            }
+            case RemoveOverride remove -> {
+                MemoryKeyImpl key = keys.get(remove.keyId());
+                if (key != null) key.restoreOverride(remove.pos(), null);
+            }
+        }
+    }
+
+    /**
+     * Appends records to a journal, creating it with a header if needed. Records are encoded before anything is
+     * written, and the journal is flushed to disk before returning. If writing fails, the journal is truncated back to
+     * its previous length.
+     *
+     * @param path    Path to the journal.
+     * @param entries Records to append.
+     * @param ops     Ops to encode memories with.
+     * @return The size of the journal after appending.
+     * @throws IOException If the records could not be encoded or written, or the journal is from an older data version.
+     */
+    static long append(Path path, List<Entry> entries, DynamicOps<Tag> ops) throws IOException {
+        Files.createDirectories(path.getParent());
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream framesOut = new DataOutputStream(frames);
+
+        OptionalInt dataVersion = readDataVersion(path);
+        if (dataVersion.isPresent() && dataVersion.getAsInt() != Types.getCurrentVersion())
+            throw new IOException("Journal %s is from data version %d, not %d".formatted(path, dataVersion.getAsInt(), Types.getCurrentVersion()));
+
+        boolean needsHeader = !Files.isRegularFile(path) || Files.size(path) == 0;
+        if (needsHeader) {
+            framesOut.writeInt(MAGIC);
+            framesOut.writeInt(FORMAT_VERSION);
+            framesOut.writeInt(Types.getCurrentVersion());
+        }
+
+        CRC32 crc = new CRC32();
+        for (Entry entry : entries) {
+            byte[] record = encode(entry, ops);
+            crc.reset();
+            crc.update(record);
+            framesOut.writeInt(record.length);
+            framesOut.write(record);
+            framesOut.writeInt((int) crc.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+                channel.position(start);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(false);
+            } catch (IOException ex) {
+                channel.truncate(start);
+                throw ex;
+            }
+            return channel.size();
+        }
+    }
+
+    /**
+     * Reads the data version from a journal's header, which all of its records are read at.
+     *
+     * @param path Path to the journal. May not exist.
+     * @return The journal's data version, or an empty optional if it doesn't exist or has no complete header.
+     * @throws IOException If the journal could not be read, or has an invalid header.
+     */
+    static OptionalInt readDataVersion(Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE) return OptionalInt.empty();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) if (channel.read(header) < 0) return OptionalInt.empty();
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("Not a memory journal: " + path);
+        int formatVersion = header.getInt();
+        if (formatVersion != FORMAT_VERSION) throw new IOException("Unknown journal format version: " + formatVersion);
+        return OptionalInt.of(header.getInt());
+    }
+
+    /**
+     * Reads all valid records from a journal. If the journal ends in a partial or corrupt frame, it is truncated to the
+     * last valid frame so that later appends follow on correctly.
+     *
+     * @param path Path to the journal. May not exist.
+     * @param ops  Ops to decode memories with.
+     * @return All valid records in the journal, in order.
+     * @throws IOException If the journal could not be read, or has an invalid header.
+     */
+    static List<Entry> read(Path path, DynamicOps<Tag> ops) throws IOException {
+        if (!Files.isRegularFile(path)) return Collections.emptyList();
+
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < HEADER_SIZE) {
+            truncate(path, 0);
+            return Collections.emptyList();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a memory journal: " + path);
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) throw new IOException("Unknown journal format version: " + formatVersion);
+        final int dataVersion = buffer.getInt();
+
+        List<Entry> entries = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        int validLength = buffer.position();
+        while (buffer.remaining() >= Integer.BYTES * 2) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - Integer.BYTES) break;
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            crc.reset();
+            crc.update(record);
+            if (buffer.getInt() != (int) crc.getValue()) break;
+
+            validLength = buffer.position();
+            try {
+                entries.add(decode(record, dataVersion, ops));
+            } catch (IOException ex) {
+                LOGGER.error("Skipping invalid journal record in {}", path, ex);
+            }
+        }
+
+        if (validLength < bytes.length) {
+            LOGGER.warn("Journal {} has {} bytes of incomplete records, truncating", path, bytes.length - validLength);
+            truncate(path, validLength);
+        }
+
+        return entries;
+    }
+
+    private static void truncate(Path path, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    private static byte[] encode(Entry entry, DynamicOps<Tag> ops) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        switch (entry) {
+            case PutMemory put -> {
+                out.writeByte(PUT_MEMORY);
+                writeLocation(out, put);
+                Tag tag = MemoryTags.unwrap(Memory.CODEC.encodeStart(ops, put.memory()), "Error encoding memory");
+                if (!(tag instanceof CompoundTag compound)) throw new IOException("Memory not encoded as a compound tag: " + tag);
+                NbtIo.write(compound, out);
+            }
+            case RemoveMemory remove -> {
+                out.writeByte(REMOVE_MEMORY);
+                writeLocation(out, remove);
+            }
+            case PutOverride put -> {
+                out.writeByte(PUT_OVERRIDE);
+                writeLocation(out, put);
+                out.writeUTF(put.override().getManualMode().name());
+                out.writeBoolean(put.override().getCustomName() != null);
+                if (put.override().getCustomName() != null) out.writeUTF(put.override().getCustomName());
+            }
+            case RemoveOverride remove -> {
+                out.writeByte(REMOVE_OVERRIDE);
+                writeLocation(out, remove);
+            }
+            case ClearKey clear -> {
+                out.writeByte(CLEAR_KEY);
+                out.writeUTF(clear.keyId().toString());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] record, int dataVersion, DynamicOps<Tag> ops) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        ResourceLocation keyId = ResourceLocation.tryParse(in.readUTF());
+        if (keyId == null) throw new IOException("Invalid memory key ID in journal");
+        if (type == CLEAR_KEY) return new ClearKey(keyId);
+
+        BlockPos pos = BlockPos.of(in.readLong());
+        return switch (type) {
+            case PUT_MEMORY -> new PutMemory(keyId, pos, readMemory(NbtIo.read(in, NbtAccounter.unlimitedHeap()), pos, dataVersion, ops));
+            case REMOVE_MEMORY -> new RemoveMemory(keyId, pos);
+            case PUT_OVERRIDE -> {
+                ManualMode mode;
+                try {
+                    mode = ManualMode.valueOf(in.readUTF());
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Invalid manual mode in journal", ex);
+                }
+                String customName = in.readBoolean() ? in.readUTF() : null;
+                yield new PutOverride(keyId, pos, new OverrideInfo(mode, customName));
+            }
+            case REMOVE_OVERRIDE -> new RemoveOverride(keyId, pos);
+            default -> throw new IOException("Unknown journal record type: " + type);
+        };
+    }
+
+    private static Memory readMemory(CompoundTag memoryTag, BlockPos pos, int dataVersion, DynamicOps<Tag> ops) throws IOException {
+        Tag fixed = MemoryTags.fix(memoryTag, pos, dataVersion, ops);
+        return MemoryTags.unwrap(Memory.CODEC.parse(ops, fixed), "Invalid memory at " + pos.toShortString());
+    }
+
+    private static void writeLocation(DataOutputStream out, PositionedEntry entry) throws IOException {
+        out.writeUTF(entry.keyId().toString());
+        out.writeLong(entry.pos().asLong());
+    }
+
+    sealed interface Entry permits ClearKey, PositionedEntry {
+        ResourceLocation keyId();
+    }
+
+    sealed interface PositionedEntry extends Entry permits PutMemory, RemoveMemory, PutOverride, RemoveOverride {
+        BlockPos pos();
+    }
+
+    record ClearKey(ResourceLocation keyId) implements Entry {}
+
+    record PutMemory(ResourceLocation keyId, BlockPos pos, Memory memory) implements PositionedEntry {}
+
+    record RemoveMemory(ResourceLocation keyId, BlockPos pos) implements PositionedEntry {}
+
+    record PutOverride(ResourceLocation keyId, BlockPos pos, OverrideInfo override) implements PositionedEntry {}
+
+    record RemoveOverride(ResourceLocation keyId, BlockPos pos) implements PositionedEntry {}
+}
@@ -0,0 +1,67 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.Dynamic;
+import com.mojang.serialization.DynamicOps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.util.ModCodecs;
+
+import java.io.*;
+
+/**
+ * Helpers for the binary storage formats, which store memories as individual NBT compounds.
+ */
+class MemoryTags {
+    private MemoryTags() {}
+
+    /**
+     * Fixes a single memory's NBT up to the current data version by wrapping it as a single-entry memory key, matching
+     * the registered DFU type.
+     *
+     * @param memoryTag   Encoded memory to fix.
+     * @param pos         Position of the memory, used as its key in the wrapper.
+     * @param dataVersion Data version the memory was saved in.
+     * @param ops         Ops to run the fixer with.
+     * @return The fixed memory, or the original if already up to date.
+     * @throws IOException If the memory was lost while fixing.
+     */
+    static Tag fix(CompoundTag memoryTag, BlockPos pos, int dataVersion, DynamicOps<Tag> ops) throws IOException {
+        if (dataVersion >= Types.getCurrentVersion()) return memoryTag;
+
+        String posString = ModCodecs.blockPosToString(pos);
+        CompoundTag memories = new CompoundTag();
+        memories.put(posString, memoryTag);
+        CompoundTag wrapper = new CompoundTag();
+        wrapper.put("memories", memories);
+        wrapper.put("overrides", new CompoundTag());
+
+        Dynamic<Tag> fixed = Types.update(Types.MEMORY_DATA, new Dynamic<>(ops, wrapper), dataVersion);
+        return fixed.get("memories").get(posString).result()
+                .map(Dynamic::getValue)
+                .orElseThrow(() -> new IOException("Memory at %s lost during data fixing".formatted(posString)));
+    }
+
+    static byte[] toBytes(CompoundTag tag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtIo.write(tag, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    static CompoundTag fromBytes(byte[] bytes) throws IOException {
+        return NbtIo.read(new DataInputStream(new ByteArrayInputStream(bytes)), NbtAccounter.unlimitedHeap());
+    }
+
+    static <T> T unwrap(DataResult<T> result, String message) throws IOException {
+        if (result.isError()) {
+            //noinspection OptionalGetWithoutIsPresent
+            throw new IOException("%s: %s".formatted(message, result.error().get().message()));
+        }
+        //noinspection OptionalGetWithoutIsPresent
+        return result.result().get();
+    }
+}
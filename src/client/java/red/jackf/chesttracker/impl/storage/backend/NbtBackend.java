@@ -1,40 +1,69 @@
 package red.jackf.chesttracker.impl.storage.backend;
 
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
 import net.minecraft.core.HolderLookup;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.Nullable;
-import red.jackf.chesttracker.impl.ChestTracker;
-import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
-import red.jackf.chesttracker.impl.util.Constants;
+import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
 import red.jackf.chesttracker.impl.util.FileUtil;
-import red.jackf.chesttracker.impl.util.Misc;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * Stores memory banks as NBT files, compressed as set by {@link ChestTrackerConfig.Storage#nbtCompression}. Existing
+ * files are read with whichever compression they were written with.
+ */
 public class NbtBackend extends FileBasedBackend {
-    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/NBT");
 
     @Override
-    public @Nullable MemoryBankImpl load(String id, @Nullable HolderLookup.Provider registries) {
-        var meta = loadMetadata(id);
-        if (meta.isEmpty()) return null;
-        var path = Constants.STORAGE_DIR.resolve(id + extension());
-        var result = Misc.time(() -> FileUtil.loadFromNbt(MemoryBankImpl.DATA_CODEC, path, registries));
-        if (result.getFirst().isPresent()) {
-            LOGGER.debug("Loaded {} in {}ns", path, result.getSecond());
-            return new MemoryBankImpl(meta.get(), result.getFirst().get());
-        } else {
-            return new MemoryBankImpl(meta.get(), new HashMap<>());
+    protected Optional<Map<ResourceLocation, MemoryKeyImpl>> loadSingleFile(Path path, @Nullable HolderLookup.Provider registries) {
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try {
+            DynamicOps<Tag> ops = registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
+            CompoundTag tag = Compression.readNbt(path);
+
+            // keys are independent, so decode them in parallel
+            List<Pair<String, DataResult<MemoryKeyImpl>>> decoded = tag.getAllKeys().parallelStream()
+                    .map(name -> Pair.of(name, MemoryKeyImpl.Codecs.MAIN.parse(ops, tag.get(name))))
+                    .toList();
+
+            Map<ResourceLocation, MemoryKeyImpl> keys = new HashMap<>();
+            for (Pair<String, DataResult<MemoryKeyImpl>> pair : decoded) {
+                ResourceLocation keyId = ResourceLocation.tryParse(pair.getFirst());
+                if (keyId == null) throw new IOException("Invalid memory key ID: " + pair.getFirst());
+                keys.put(keyId, MemoryTags.unwrap(pair.getSecond(), "Invalid memory key " + keyId));
+            }
+            return Optional.of(keys);
+        } catch (IOException ex) {
+            LOGGER.error("Error loading {}", path, ex);
+            FileUtil.tryMove(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            return Optional.empty();
         }
     }
 
     @Override
-    public boolean save(MemoryBankImpl memoryBank, @Nullable HolderLookup.Provider registries) {
-        LOGGER.debug("Saving {}", memoryBank.getId());
-        memoryBank.getMetadata().updateModified();
-        if (!saveMetadata(memoryBank.getId(), memoryBank.getMetadata())) return false;
-        return FileUtil.saveToNbt(memoryBank.getMemories(), MemoryBankImpl.DATA_CODEC, Constants.STORAGE_DIR.resolve(memoryBank.getId() + extension()), registries);
+    protected Optional<MemoryKeyImpl> loadSegment(Path path, @Nullable HolderLookup.Provider registries) {
+        return FileUtil.loadFromNbt(MemoryKeyImpl.Codecs.MAIN, path, registries);
+    }
+
+    @Override
+    protected boolean saveSegment(Path path, MemoryKeyImpl key, @Nullable HolderLookup.Provider registries) {
+        var config = ChestTrackerConfig.INSTANCE.instance().storage;
+        return FileUtil.saveToNbt(key, MemoryKeyImpl.Codecs.MAIN, path, registries, config.nbtCompression, config.gzipLevel);
     }
 
     @Override
@@ -0,0 +1,53 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.resources.ResourceLocation;
+import red.jackf.chesttracker.impl.datafix.Types;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Index of a segmented memory bank, mapping each memory key to the file it is stored in, relative to the bank's
+ * segment directory.
+ *
+ * @param segments     Map of memory key IDs to relative file names.
+ * @param dataVersions Map of memory key IDs to the data version their segment was written at. Keys missing from this
+ *                     map were written before versions were recorded.
+ * @param memoryCounts Map of memory key IDs to the number of memories in their segment. Keys missing from this map
+ *                     haven't been counted since counts were recorded.
+ */
+public record SegmentManifest(Map<ResourceLocation, String> segments, Map<ResourceLocation, Integer> dataVersions, Map<ResourceLocation, Integer> memoryCounts) {
+    public static final String FILE_NAME = "manifest.json";
+
+    public static final Codec<SegmentManifest> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.unboundedMap(ResourceLocation.CODEC, Codec.STRING).fieldOf("segments").forGetter(SegmentManifest::segments),
+            Codec.unboundedMap(ResourceLocation.CODEC, Codec.INT).optionalFieldOf("dataVersions", Map.of()).forGetter(SegmentManifest::dataVersions),
+            Codec.unboundedMap(ResourceLocation.CODEC, Codec.INT).optionalFieldOf("memoryCounts", Map.of()).forGetter(SegmentManifest::memoryCounts)
+    ).apply(instance, SegmentManifest::new));
+
+    public static SegmentManifest empty() {
+        return new SegmentManifest(Map.of(), Map.of(), Map.of());
+    }
+
+    /**
+     * @return Number of memories in each key, or an empty optional if any key hasn't been counted yet.
+     */
+    public Optional<Map<ResourceLocation, Integer>> getMemoryCounts() {
+        if (!memoryCounts.keySet().containsAll(segments.keySet())) return Optional.empty();
+        return Optional.of(memoryCounts);
+    }
+
+    /**
+     * @return Keys whose segments were written at an older or unknown data version, and need data fixing when read.
+     */
+    public Set<ResourceLocation> getOutdatedKeys() {
+        final int current = Types.getCurrentVersion();
+        return segments.keySet().stream()
+                .filter(keyId -> dataVersions.getOrDefault(keyId, 0) < current)
+                .collect(Collectors.toSet());
+    }
+}
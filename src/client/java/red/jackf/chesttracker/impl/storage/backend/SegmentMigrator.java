@@ -0,0 +1,108 @@
+package red.jackf.chesttracker.impl.storage.backend;
+
+import net.minecraft.core.HolderLookup;
+import net.minecraft.resources.ResourceLocation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import red.jackf.chesttracker.impl.ChestTracker;
+import red.jackf.chesttracker.impl.datafix.Types;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.storage.SaveScheduler;
+import red.jackf.chesttracker.impl.util.Misc;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Rewrites segments saved at an older data version in the background, so that the data fixer only runs on them once
+ * per game update instead of on every load.</p>
+ *
+ * <p>Each key is migrated as its own task on the {@link SaveScheduler#getExecutor() storage thread}, so saves requested
+ * during a migration aren't held up behind the whole bank. Migrating a key holds the backend's segment lock, so a key
+ * being loaded on the client thread is never read half-replaced.</p>
+ */
+class SegmentMigrator {
+    private static final Logger LOGGER = LogManager.getLogger(ChestTracker.class.getCanonicalName() + "/Migration");
+
+    private final FileBasedBackend backend;
+    private final Map<String, Migration> running = new ConcurrentHashMap<>();
+
+    SegmentMigrator(FileBasedBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Queue migration of a bank's outdated segments. Should be called after {@link #cancel(String)}.
+     */
+    void schedule(String id, Set<ResourceLocation> keys, @Nullable HolderLookup.Provider registries) {
+        if (keys.isEmpty()) return;
+        LOGGER.info("Migrating {} outdated segments for {} in the background", keys.size(), id);
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (ResourceLocation keyId : keys) {
+            chain = chain.thenRunAsync(() -> {
+                if (cancelled.get()) return;
+                var result = Misc.time(() -> migrate(id, keyId, registries));
+                if (result.getFirst())
+                    LOGGER.debug("Migrated {} in {} in {}ns", keyId, id, result.getSecond());
+            }, SaveScheduler.getExecutor());
+        }
+
+        Migration migration = new Migration(cancelled, chain.exceptionally(ex -> {
+            LOGGER.error("Error migrating {}", id, ex);
+            return null;
+        }));
+        running.put(id, migration);
+        migration.future().thenRun(() -> running.remove(id, migration));
+    }
+
+    /**
+     * Stops any running migration for a bank and waits for the key in progress to finish. Called before a bank's files
+     * are loaded or deleted.
+     */
+    void cancel(String id) {
+        Migration migration = running.remove(id);
+        if (migration == null) return;
+        migration.cancelled().set(true);
+        migration.future().join();
+    }
+
+    private boolean migrate(String id, ResourceLocation keyId, @Nullable HolderLookup.Provider registries) {
+        synchronized (backend.segmentLock) {
+            Optional<SegmentManifest> manifest = backend.loadManifest(id);
+            if (manifest.isEmpty()) return false;
+
+            // may have been rewritten by a save since this was queued
+            String file = manifest.get().segments().get(keyId);
+            if (file == null || !manifest.get().getOutdatedKeys().contains(keyId)) return false;
+
+            Path segmentDirectory = backend.getSegmentDirectory(id);
+            Optional<MemoryKeyImpl> key = backend.loadSegment(segmentDirectory.resolve(file), registries);
+            if (key.isEmpty()) return false;
+
+            String fileName = backend.getSegmentFileName(keyId);
+            if (!backend.saveSegment(segmentDirectory.resolve(fileName), key.get(), registries)) return false;
+
+            Map<ResourceLocation, String> segments = new HashMap<>(manifest.get().segments());
+            Map<ResourceLocation, Integer> dataVersions = new HashMap<>(manifest.get().dataVersions());
+            Map<ResourceLocation, Integer> memoryCounts = new HashMap<>(manifest.get().memoryCounts());
+            segments.put(keyId, fileName);
+            dataVersions.put(keyId, Types.getCurrentVersion());
+            memoryCounts.put(keyId, key.get().getMemories().size());
+            if (!backend.saveManifest(id, new SegmentManifest(segments, dataVersions, memoryCounts))) return false;
+
+            if (!fileName.equals(file)) FileBasedBackend.deleteIfPresent(segmentDirectory.resolve(file));
+            return true;
+        }
+    }
+
+    private record Migration(AtomicBoolean cancelled, CompletableFuture<Void> future) {}
+}
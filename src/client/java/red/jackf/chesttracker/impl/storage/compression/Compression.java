@@ -0,0 +1,116 @@
+package red.jackf.chesttracker.impl.storage.compression;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Compression used for NBT files. Files are written with a short header naming their compression, so that it can be
+ * changed without breaking existing files.</p>
+ *
+ * <p>Files without a header are read as GZIP, matching {@link NbtIo#writeCompressed(CompoundTag, Path)}. GZIP files are
+ * written without one, so they stay readable by versions from before other compressions were added.</p>
+ */
+public enum Compression {
+    /**
+     * No compression. Fastest, but the largest on disk.
+     */
+    NONE(0),
+    /**
+     * GZIP, at a configurable level. The smallest on disk, but the slowest to save and load.
+     */
+    GZIP(1),
+    /**
+     * LZ4 blocks; see {@link Lz4Block}.
+     */
+    LZ4(2);
+
+    private static final int MAGIC = 0x4354435A; // CTCZ
+    private static final int HEADER_SIZE = 5;
+
+    private final int id;
+
+    Compression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Writes a compound tag to a stream with this compression, preceded by the header unless using {@link #GZIP}.
+     *
+     * @param tag       Tag to write.
+     * @param out       Stream to write to. Not closed by this method.
+     * @param gzipLevel Compression level if using {@link #GZIP}, from 1 to 9.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void writeNbt(CompoundTag tag, OutputStream out, int gzipLevel) throws IOException {
+        if (this != GZIP) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeByte(id);
+        }
+
+        switch (this) {
+            case NONE -> {
+                DataOutputStream data = new DataOutputStream(out);
+                NbtIo.write(tag, data);
+                data.flush();
+            }
+            case GZIP -> {
+                GZIPOutputStream gzip = new GZIPOutputStream(out) {{
+                    def.setLevel(gzipLevel);
+                }};
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+                NbtIo.write(tag, data);
+                data.flush();
+                gzip.finish();
+            }
+            case LZ4 -> {
+                Lz4BlockOutputStream lz4 = new Lz4BlockOutputStream(out);
+                DataOutputStream data = new DataOutputStream(lz4);
+                NbtIo.write(tag, data);
+                data.flush();
+                lz4.finish();
+            }
+        }
+    }
+
+    /**
+     * Reads a compound tag from a file, detecting its compression from the header.
+     *
+     * @param path Path to read from.
+     * @return The read tag.
+     * @throws IOException If the file couldn't be read, or is malformed.
+     */
+    public static CompoundTag readNbt(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            in.mark(HEADER_SIZE);
+            DataInputStream header = new DataInputStream(in);
+
+            Compression compression = GZIP;
+            if (header.readInt() == MAGIC) {
+                compression = byId(header.readUnsignedByte());
+            } else {
+                in.reset();
+            }
+
+            InputStream decompressed = switch (compression) {
+                case NONE -> in;
+                case GZIP -> new BufferedInputStream(new GZIPInputStream(in));
+                case LZ4 -> new Lz4BlockInputStream(in);
+            };
+            return NbtIo.read(new DataInputStream(decompressed), NbtAccounter.unlimitedHeap());
+        }
+    }
+
+    private static Compression byId(int id) throws IOException {
+        for (Compression compression : values())
+            if (compression.id == id) return compression;
+        throw new IOException("Unknown compression ID " + id);
+    }
+}
@@ -0,0 +1,161 @@
+package red.jackf.chesttracker.impl.storage.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>Pure Java implementation of the LZ4 block format, which trades compression ratio for speed.</p>
+ *
+ * <p>The compressor uses a single hash table of recent 4-byte sequences with no match searching beyond it, the same
+ * strategy as LZ4's fast mode.</p>
+ */
+public class Lz4Block {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+
+    private Lz4Block() {}
+
+    /**
+     * @return The largest possible compressed size for an input of the given length.
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block of data.
+     *
+     * @param src    Data to compress.
+     * @param srcLen Length of the data in {@code src}.
+     * @param dst    Array to write the compressed block to, of at least {@link #maxCompressedLength(int)} bytes.
+     * @return Length of the compressed block.
+     */
+    public static int compress(byte[] src, int srcLen, byte[] dst) {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+
+        int ip = 0;
+        int anchor = 0;
+        int op = 0;
+        final int limit = srcLen - MATCH_FIND_LIMIT;
+        final int matchLimit = srcLen - LAST_LITERALS;
+
+        while (ip < limit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int ref = table[hash];
+            table[hash] = ip;
+
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength])
+                matchLength++;
+
+            op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        // the block always ends with a literal-only sequence
+        return writeLiterals(dst, op, src, anchor, srcLen - anchor);
+    }
+
+    /**
+     * Decompresses a block of data.
+     *
+     * @param src    Compressed block.
+     * @param srcLen Length of the compressed block in {@code src}.
+     * @param dst    Array to write the decompressed data to.
+     * @param dstLen Expected length of the decompressed data.
+     * @throws IOException If the block is malformed.
+     */
+    public static void decompress(byte[] src, int srcLen, byte[] dst, int dstLen) throws IOException {
+        try {
+            int ip = 0;
+            int op = 0;
+
+            while (true) {
+                int token = src[ip++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (ip + literalLength > srcLen || op + literalLength > dstLen)
+                    throw new IOException("Literals run past end of block");
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+
+                if (ip >= srcLen) break;
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                if (offset == 0 || offset > op) throw new IOException("Invalid match offset " + offset);
+
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (op + matchLength > dstLen) throw new IOException("Match runs past end of block");
+
+                // may overlap its own output, so copy one byte at a time
+                for (int i = 0; i < matchLength; i++, op++)
+                    dst[op] = dst[op - offset];
+            }
+
+            if (op != dstLen) throw new IOException("Expected %d bytes, got %d".formatted(dstLen, op));
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Truncated block", ex);
+        }
+    }
+
+    private static int writeSequence(byte[] dst, int op, byte[] src, int literalStart, int literalLength, int offset, int matchLength) {
+        int extraMatch = matchLength - MIN_MATCH;
+        dst[op++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(extraMatch, 15));
+        if (literalLength >= 15) op = writeLength(dst, op, literalLength - 15);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (extraMatch >= 15) op = writeLength(dst, op, extraMatch - 15);
+        return op;
+    }
+
+    private static int writeLiterals(byte[] dst, int op, byte[] src, int literalStart, int literalLength) {
+        dst[op++] = (byte) (Math.min(literalLength, 15) << 4);
+        if (literalLength >= 15) op = writeLength(dst, op, literalLength - 15);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,77 @@
+package red.jackf.chesttracker.impl.storage.compression;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which reads data written by an {@link Lz4BlockOutputStream}.
+ */
+public class Lz4BlockInputStream extends InputStream {
+    private final DataInputStream in;
+    private final byte[] buffer = new byte[Lz4BlockOutputStream.BLOCK_SIZE];
+    private final byte[] compressed = new byte[Lz4Block.maxCompressedLength(Lz4BlockOutputStream.BLOCK_SIZE)];
+    private int position = 0;
+    private int count = 0;
+    private boolean finished = false;
+
+    public Lz4BlockInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == count && !readBlock()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == count && !readBlock()) return -1;
+        int n = Math.min(len, count - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return count - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        if (finished) return false;
+
+        int rawLength = in.readInt();
+        if (rawLength == 0) {
+            finished = true;
+            return false;
+        }
+
+        int storedLength = in.readInt();
+        if (rawLength < 0 || rawLength > buffer.length || storedLength < 0 || storedLength > compressed.length)
+            throw new IOException("Invalid block lengths %d, %d".formatted(rawLength, storedLength));
+
+        try {
+            if (storedLength == rawLength) {
+                in.readFully(buffer, 0, rawLength);
+            } else {
+                in.readFully(compressed, 0, storedLength);
+                Lz4Block.decompress(compressed, storedLength, buffer, rawLength);
+            }
+        } catch (EOFException ex) {
+            throw new IOException("Truncated LZ4 stream", ex);
+        }
+
+        position = 0;
+        count = rawLength;
+        return true;
+    }
+}
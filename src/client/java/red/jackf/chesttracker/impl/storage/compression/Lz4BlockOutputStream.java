@@ -0,0 +1,73 @@
+package red.jackf.chesttracker.impl.storage.compression;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Output stream which compresses data in independent {@link Lz4Block LZ4 blocks}.</p>
+ *
+ * <p>Each block is written as {@code [int rawLength][int storedLength][data]}. If compressing a block doesn't make it
+ * smaller, it is stored as-is with {@code storedLength == rawLength}. The stream ends with a block of length 0.</p>
+ */
+public class Lz4BlockOutputStream extends OutputStream {
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[Lz4Block.maxCompressedLength(BLOCK_SIZE)];
+    private int count = 0;
+    private boolean closed = false;
+
+    public Lz4BlockOutputStream(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == BLOCK_SIZE) writeBlock();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == BLOCK_SIZE) writeBlock();
+            int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes any buffered data and the end marker, without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (closed) return;
+        if (count > 0) writeBlock();
+        out.writeInt(0);
+        out.flush();
+        closed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeBlock() throws IOException {
+        int length = Lz4Block.compress(buffer, count, compressed);
+        out.writeInt(count);
+        if (length < count) {
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+        } else {
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+        }
+        count = 0;
+    }
+}
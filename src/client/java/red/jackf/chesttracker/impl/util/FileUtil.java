@@ -8,12 +8,18 @@ import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.nbt.*;
+import org.apache.commons.io.function.IOConsumer;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 import red.jackf.chesttracker.impl.ChestTracker;
 import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -37,8 +43,27 @@ public class FileUtil {
      * @param <T>    Type of the serialized object
      * @return Whether the save was successful
      */
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     public static <T> boolean saveToNbt(T object, Codec<T> codec, Path path, @Nullable HolderLookup.Provider registries) {
+        return saveToNbt(object, codec, path, registries, (compound, out) -> NbtIo.writeCompressed(compound, out));
+    }
+
+    /**
+     * Save an object to a path with a given codec as an NBT file, using the given compression.
+     *
+     * @param object      Object to serialize
+     * @param codec       Codec to serialize said object with
+     * @param path        Path to save the object to
+     * @param compression Compression to write the file with
+     * @param gzipLevel   Compression level if using GZIP, from 1 to 9
+     * @param <T>         Type of the serialized object
+     * @return Whether the save was successful
+     */
+    public static <T> boolean saveToNbt(T object, Codec<T> codec, Path path, @Nullable HolderLookup.Provider registries, Compression compression, int gzipLevel) {
+        return saveToNbt(object, codec, path, registries, (compound, out) -> compression.writeNbt(compound, out, gzipLevel));
+    }
+
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    private static <T> boolean saveToNbt(T object, Codec<T> codec, Path path, @Nullable HolderLookup.Provider registries, NbtWriter writer) {
         try {
             DynamicOps<Tag> ops = registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
             Files.createDirectories(path.getParent());
@@ -47,7 +72,7 @@ public class FileUtil {
             if (tag.isError()) {
                 throw new IOException("Error encoding to NBT %s".formatted(tag.error().get()));
             } else if (tag.isSuccess() && tag.result().get() instanceof CompoundTag compound) {
-                NbtIo.writeCompressed(compound, path);
+                writeAtomically(path, out -> writer.write(compound, out));
                 return true;
             } else {
                 throw new IOException("Error encoding to NBT: not a compound tag: %s".formatted(tag.result().get()));
@@ -59,7 +84,8 @@ public class FileUtil {
     }
 
     /**
-     * Load an NBT file to an object using a given codec
+     * Load an NBT file to an object using a given codec. The file's compression is detected from its header; see
+     * {@link Compression}.
      *
      * @param codec Codec to deserialize with
      * @param path  Path to read from
@@ -70,7 +96,7 @@ public class FileUtil {
         if (Files.isRegularFile(path)) {
             try {
                 DynamicOps<Tag> ops = registries == null ? NbtOps.INSTANCE : registries.createSerializationContext(NbtOps.INSTANCE);
-                var tag = NbtIo.readCompressed(path, NbtAccounter.unlimitedHeap());
+                var tag = Compression.readNbt(path);
                 var loaded = codec.decode(ops, tag);
                 if (loaded.isError()) {
                     //noinspection OptionalGetWithoutIsPresent
@@ -86,6 +112,34 @@ public class FileUtil {
         return Optional.empty();
     }
 
+    /**
+     * Writes a file by first writing to a temporary sibling file, then moving it over the target. This means that
+     * readers never see a partially written file, and a crash mid-write leaves the previous version intact.
+     *
+     * @param path   Path to write to
+     * @param writer Callback writing the file's contents to a buffered stream
+     * @throws IOException If an error occurs while writing or moving the file
+     */
+    public static void writeAtomically(Path path, IOConsumer<OutputStream> writer) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            writer.accept(out);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes a string to a file as UTF-8, using {@link #writeAtomically(Path, IOConsumer)}.
+     */
+    public static void writeStringAtomically(Path path, String contents) throws IOException {
+        writeAtomically(path, out -> out.write(contents.getBytes(StandardCharsets.UTF_8)));
+    }
+
     public static void tryMove(Path from, Path to, CopyOption... options) {
         try {
             Files.move(from, to, options);
@@ -97,4 +151,9 @@ public class FileUtil {
     public static Gson gson() {
         return ChestTrackerConfig.INSTANCE.instance().storage.readableJsonMemories ? GSON : GSON_COMPACT;
     }
+
+    @FunctionalInterface
+    private interface NbtWriter {
+        void write(CompoundTag tag, OutputStream out) throws IOException;
+    }
 }
@@ -18,6 +18,7 @@ import net.minecraft.world.item.component.ItemLore;
 import net.minecraft.world.item.enchantment.EnchantmentHelper;
 import net.minecraft.world.item.enchantment.ItemEnchantments;
 import org.apache.commons.lang3.StringUtils;
+import red.jackf.chesttracker.api.memory.Memory;
 
 import java.util.*;
 
@@ -30,6 +31,22 @@ public class ItemStacks {
         for (ItemStack itemStack : in) {
             counts.merge(new LightweightStack(itemStack), itemStack.getCount(), Integer::sum);
         }
+        return toStacks(counts, sortDescending);
+    }
+
+    /**
+     * Combine and sort the items in a collection of memories in descending order of count, without copying each
+     * stored stack first
+     */
+    public static List<ItemStack> flattenMemories(Collection<Memory> memories, boolean sortDescending) {
+        var counts = new HashMap<LightweightStack, Integer>();
+        for (Memory memory : memories) {
+            memory.forEachItem((stack, count) -> counts.merge(new LightweightStack(stack), count, Integer::sum));
+        }
+        return toStacks(counts, sortDescending);
+    }
+
+    private static List<ItemStack> toStacks(Map<LightweightStack, Integer> counts, boolean sortDescending) {
         var stream = counts.entrySet().stream()
                 .map(entry -> {
                     var stack = entry.getKey().toStack();
@@ -149,6 +166,12 @@ public class ItemStacks {
             this(stack.getItem(), stack.getComponentsPatch());
         }
 
+        // copies of the same interned prototype share their component map, so these are usually reference checks
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LightweightStack other && item == other.item && (patch == other.patch || patch.equals(other.patch));
+        }
+
         public ItemStack toStack() {
             ItemStack stack = new ItemStack(item);
 
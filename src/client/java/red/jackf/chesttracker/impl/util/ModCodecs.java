@@ -25,24 +25,7 @@ public class ModCodecs {
     /**
      * Short form block pos codec
      */
-    public static final Codec<BlockPos> BLOCK_POS_STRING = Codec.STRING.comapFlatMap(
-            s -> {
-                String[] split = s.split(",");
-                if (split.length == 3) {
-                    try {
-                        int x = Integer.parseInt(split[0]);
-                        int y = Integer.parseInt(split[1]);
-                        int z = Integer.parseInt(split[2]);
-
-                        return DataResult.success(new BlockPos(x, y, z));
-                    } catch (NumberFormatException ex) {
-                        return DataResult.error(() -> "Invalid integer in key");
-                    }
-                } else {
-                    return DataResult.error(() -> "Invalid number of coordinates: " + split.length);
-                }
-            }, pos -> "%d,%d,%d".formatted(pos.getX(), pos.getY(), pos.getZ())
-    );
+    public static final Codec<BlockPos> BLOCK_POS_STRING = Codec.STRING.comapFlatMap(ModCodecs::parseBlockPos, ModCodecs::blockPosToString);
 
     /**
      * Compact codec for an ItemStack. Ignores the count on both serialization and deserialization. Deprecated.
@@ -70,6 +53,37 @@ public class ModCodecs {
     // METHODS //
     /////////////
 
+    /**
+     * Parses a block position in the short form used by {@link #BLOCK_POS_STRING}, i.e. <code>x,y,z</code>.
+     * @param s String to parse
+     * @return A data result containing the parsed position, or an error if malformed
+     */
+    public static DataResult<BlockPos> parseBlockPos(String s) {
+        String[] split = s.split(",");
+        if (split.length == 3) {
+            try {
+                int x = Integer.parseInt(split[0]);
+                int y = Integer.parseInt(split[1]);
+                int z = Integer.parseInt(split[2]);
+
+                return DataResult.success(new BlockPos(x, y, z));
+            } catch (NumberFormatException ex) {
+                return DataResult.error(() -> "Invalid integer in key");
+            }
+        } else {
+            return DataResult.error(() -> "Invalid number of coordinates: " + split.length);
+        }
+    }
+
+    /**
+     * Formats a block position in the short form used by {@link #BLOCK_POS_STRING}.
+     * @param pos Position to format
+     * @return Position in the form <code>x,y,z</code>
+     */
+    public static String blockPosToString(BlockPos pos) {
+        return "%d,%d,%d".formatted(pos.getX(), pos.getY(), pos.getZ());
+    }
+
     /**
      * Creates a codec that can only decode into a single value.
      * @param typeCodec Base codec to use
@@ -89,9 +103,8 @@ public class ModCodecs {
         return new Codec<>() {
             @Override
             public <A> DataResult<Pair<T, A>> decode(DynamicOps<A> ops, A input) {
-                Dynamic<A> dynamic = new Dynamic<>(ops, input);
-                if (decodingPredicate.test(dynamic)) {
-                    return base.decode(dynamic);
+                if (decodingPredicate.test(new Dynamic<>(ops, input))) {
+                    return base.decode(ops, input);
                 }
                 return DataResult.error(() -> "Did not match predicate: " + input);
             }
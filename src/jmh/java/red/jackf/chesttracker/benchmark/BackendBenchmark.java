@@ -0,0 +1,88 @@
+package red.jackf.chesttracker.benchmark;
+
+import net.minecraft.core.HolderLookup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.config.ChestTrackerConfig;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.storage.backend.Backend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading whole memory banks with each storage backend. Loads decode every key and item, as opening the
+ * Chest Tracker screen would.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BackendBenchmark {
+    private static final String BANK_ID = "benchmark/backend";
+
+    @Param({"JSON", "NBT", "JOURNAL", "BINARY", "MEMORY"})
+    public Backend.Type backendType;
+
+    @Param({"4"})
+    public int keyCount;
+
+    @Param({"1000", "125000"})
+    public int memoriesPerKey;
+
+    @Param({"200"})
+    public int itemDiversity;
+
+    @Param({"0.1"})
+    public double namedRatio;
+
+    @Param({"0.05"})
+    public double componentHeavyRatio;
+
+    // only JSON and NBT record history; other backends ignore this
+    @Param({"0", "16"})
+    public int historyVersions;
+
+    private HolderLookup.Provider registries;
+    private Backend backend;
+    private MemoryBankImpl bank;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        registries = BenchmarkEnvironment.getRegistries();
+        ChestTrackerConfig.INSTANCE.instance().storage.historyVersions = historyVersions;
+
+        backend = backendType.instance;
+        bank = new SyntheticBankGenerator(keyCount, memoriesPerKey, itemDiversity, namedRatio, componentHeavyRatio, 1L)
+                .generate(BANK_ID, registries);
+
+        // something to load
+        backend.delete(BANK_ID);
+        backend.save(bank, registries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.delete(BANK_ID);
+    }
+
+    @Benchmark
+    public boolean save() {
+        // keys stay dirty, so every key is written each time
+        return backend.save(bank, registries);
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        MemoryBankImpl loaded = backend.load(BANK_ID, registries);
+        if (loaded == null) throw new IllegalStateException("Benchmark bank missing");
+        loaded.loadAll();
+
+        for (MemoryKeyImpl key : loaded.getMemories().values())
+            for (Memory memory : key.getMemories().values())
+                blackhole.consume(memory.items());
+    }
+}
@@ -0,0 +1,62 @@
+package red.jackf.chesttracker.benchmark;
+
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.data.registries.VanillaRegistries;
+import net.minecraft.server.Bootstrap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sets up enough of the game to run storage code outside of a launched client: vanilla registries for item codecs, and
+ * a scratch game directory for Fabric Loader, so that storage and config paths resolve somewhere disposable.
+ */
+public class BenchmarkEnvironment {
+    private static HolderLookup.Provider registries = null;
+    private static Path gameDir = null;
+
+    private BenchmarkEnvironment() {}
+
+    public static synchronized void init() {
+        if (registries != null) return;
+
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        try {
+            gameDir = Files.createTempDirectory("chesttracker-jmh");
+            // not launched through Knot, so point the loader at the scratch directory directly
+            setLoaderField("gameDir", gameDir);
+            setLoaderField("configDir", gameDir.resolve("config"));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        registries = VanillaRegistries.createLookup();
+    }
+
+    public static HolderLookup.Provider getRegistries() {
+        init();
+        return registries;
+    }
+
+    public static Path getGameDir() {
+        init();
+        return gameDir;
+    }
+
+    private static void setLoaderField(String name, Path value) {
+        try {
+            Field field = FabricLoaderImpl.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(FabricLoaderImpl.INSTANCE, value);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Couldn't set Fabric Loader " + name, ex);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package red.jackf.chesttracker.benchmark;
+
+import com.google.gson.JsonElement;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.core.HolderLookup;
+import org.openjdk.jmh.annotations.*;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+import red.jackf.chesttracker.impl.storage.compression.Compression;
+import red.jackf.chesttracker.impl.util.FileUtil;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding metadata and single memory keys, without a backend in the way.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+    @Param({"1000", "25000"})
+    public int memories;
+
+    @Param({"0.05"})
+    public double componentHeavyRatio;
+
+    @Param({"NONE", "GZIP", "LZ4"})
+    public Compression compression;
+
+    private HolderLookup.Provider registries;
+    private Metadata metadata;
+    private JsonElement metadataJson;
+    private MemoryKeyImpl key;
+    private Path keyPath;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        registries = BenchmarkEnvironment.getRegistries();
+
+        metadata = Metadata.blankWithName("Benchmark");
+        metadataJson = Metadata.CODEC.encodeStart(JsonOps.INSTANCE, metadata).getOrThrow();
+
+        key = new SyntheticBankGenerator(1, memories, 200, 0.1, componentHeavyRatio, 1L).generateKey(registries);
+        keyPath = BenchmarkEnvironment.getGameDir().resolve("codec-benchmark-" + compression + ".nbt");
+        FileUtil.saveToNbt(key, MemoryKeyImpl.Codecs.MAIN, keyPath, registries, compression, 6);
+    }
+
+    @Benchmark
+    public Metadata metadataRoundTrip() {
+        JsonElement json = Metadata.CODEC.encodeStart(JsonOps.INSTANCE, metadata).getOrThrow();
+        return Metadata.CODEC.parse(JsonOps.INSTANCE, json).getOrThrow();
+    }
+
+    @Benchmark
+    public Metadata metadataDecode() {
+        return Metadata.CODEC.parse(JsonOps.INSTANCE, metadataJson).getOrThrow();
+    }
+
+    @Benchmark
+    public boolean saveToNbt() {
+        return FileUtil.saveToNbt(key, MemoryKeyImpl.Codecs.MAIN, keyPath, registries, compression, 6);
+    }
+
+    @Benchmark
+    public Optional<MemoryKeyImpl> loadFromNbt() {
+        return FileUtil.loadFromNbt(MemoryKeyImpl.Codecs.MAIN, keyPath, registries);
+    }
+}
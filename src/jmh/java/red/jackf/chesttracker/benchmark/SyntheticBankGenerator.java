@@ -0,0 +1,129 @@
+package red.jackf.chesttracker.benchmark;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.ItemLore;
+import net.minecraft.world.item.enchantment.Enchantment;
+import net.minecraft.world.item.enchantment.Enchantments;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import red.jackf.chesttracker.api.memory.Memory;
+import red.jackf.chesttracker.impl.memory.MemoryBankImpl;
+import red.jackf.chesttracker.impl.memory.MemoryKeyImpl;
+import red.jackf.chesttracker.impl.memory.metadata.Metadata;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * <p>Generates memory banks of a given shape for benchmarking. The same settings and seed always produce the same
+ * bank.</p>
+ *
+ * @param keyCount            Number of memory keys, such as dimensions.
+ * @param memoriesPerKey      Number of memories in each key.
+ * @param itemDiversity       Number of distinct item types to pick stacks from.
+ * @param namedRatio          Fraction of memories with a custom name, from 0 to 1.
+ * @param componentHeavyRatio Fraction of stacks with enchantments, a custom name and lore, from 0 to 1.
+ * @param seed                Random seed.
+ */
+public record SyntheticBankGenerator(int keyCount,
+                                     int memoriesPerKey,
+                                     int itemDiversity,
+                                     double namedRatio,
+                                     double componentHeavyRatio,
+                                     long seed) {
+    private static final int MAX_STACKS_PER_MEMORY = 27;
+    private static final long BASE_TIMESTAMP = 1_700_000_000L;
+    private static final List<ResourceKey<Enchantment>> ENCHANTMENTS = List.of(
+            Enchantments.SHARPNESS,
+            Enchantments.UNBREAKING,
+            Enchantments.EFFICIENCY,
+            Enchantments.FORTUNE,
+            Enchantments.MENDING
+    );
+    private static final List<Block> CONTAINERS = List.of(Blocks.CHEST, Blocks.BARREL, Blocks.SHULKER_BOX);
+
+    /**
+     * Generates a bank with every key marked dirty, ready to be saved.
+     */
+    public MemoryBankImpl generate(String id, HolderLookup.Provider registries) {
+        Random random = new Random(seed);
+        List<Item> items = pickItems(random);
+
+        Map<ResourceLocation, MemoryKeyImpl> keys = new HashMap<>();
+        for (int i = 0; i < keyCount; i++)
+            keys.put(ResourceLocation.fromNamespaceAndPath("benchmark", "key_" + i), generateKey(random, items, registries));
+
+        MemoryBankImpl bank = new MemoryBankImpl(Metadata.blankWithName("Benchmark " + id), keys);
+        bank.setId(id);
+        bank.markAllDirty();
+        return bank;
+    }
+
+    /**
+     * Generates a single memory key, such as for benchmarking codecs directly.
+     */
+    public MemoryKeyImpl generateKey(HolderLookup.Provider registries) {
+        Random random = new Random(seed);
+        return generateKey(random, pickItems(random), registries);
+    }
+
+    private List<Item> pickItems(Random random) {
+        List<Item> all = new ArrayList<>(BuiltInRegistries.ITEM.stream().filter(item -> item != Items.AIR).toList());
+        Collections.shuffle(all, random);
+        return all.subList(0, Math.min(itemDiversity, all.size()));
+    }
+
+    private MemoryKeyImpl generateKey(Random random, List<Item> items, HolderLookup.Provider registries) {
+        Map<BlockPos, Memory> memories = new HashMap<>();
+        for (int i = 0; i < memoriesPerKey; i++) {
+            // spread out in a grid, as in a storage room
+            BlockPos pos = new BlockPos(i % 256, 64 + (i / 65536), (i / 256) % 256);
+
+            int stackCount = 1 + random.nextInt(MAX_STACKS_PER_MEMORY);
+            List<ItemStack> stacks = new ArrayList<>(stackCount);
+            for (int j = 0; j < stackCount; j++)
+                stacks.add(generateStack(random, items, registries));
+
+            Component name = random.nextDouble() < namedRatio ? Component.literal("Storage " + i) : null;
+            Block container = CONTAINERS.get(random.nextInt(CONTAINERS.size()));
+
+            memories.put(pos, new Memory(
+                    stacks,
+                    name,
+                    List.of(),
+                    Optional.of(container),
+                    random.nextInt(1_000_000),
+                    random.nextInt(1_000_000),
+                    Instant.ofEpochSecond(BASE_TIMESTAMP + random.nextInt(1_000_000))));
+        }
+        return new MemoryKeyImpl(memories, Map.of());
+    }
+
+    private ItemStack generateStack(Random random, List<Item> items, HolderLookup.Provider registries) {
+        Item item = items.get(random.nextInt(items.size()));
+        ItemStack stack = new ItemStack(item, 1 + random.nextInt(item.getDefaultMaxStackSize()));
+
+        if (random.nextDouble() < componentHeavyRatio) {
+            var enchantments = registries.lookupOrThrow(Registries.ENCHANTMENT);
+            int enchantmentCount = 1 + random.nextInt(3);
+            for (int i = 0; i < enchantmentCount; i++)
+                stack.enchant(enchantments.getOrThrow(ENCHANTMENTS.get(random.nextInt(ENCHANTMENTS.size()))), 1 + random.nextInt(5));
+            stack.set(DataComponents.CUSTOM_NAME, Component.literal("Item " + random.nextInt(10_000)));
+            stack.set(DataComponents.LORE, new ItemLore(List.of(
+                    Component.literal("Generated for benchmarking"),
+                    Component.literal("Batch " + random.nextInt(100)))));
+        }
+
+        return stack;
+    }
+}
@@ -0,0 +1,143 @@
+package red.jackf.chesttracker.impl.storage.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips for {@link Lz4Block} and the {@link Lz4BlockOutputStream}/{@link Lz4BlockInputStream} pair.
+ */
+class Lz4Test {
+    private static final int BLOCK = Lz4BlockOutputStream.BLOCK_SIZE;
+
+    // 0-12 bytes never reach the match finder; 13 is the first length that can
+    private static final int[] LENGTHS = {0, 1, 4, 5, 11, 12, 13, 14, 255, 270, BLOCK - 1, BLOCK, BLOCK + 1, 3 * BLOCK + 17};
+
+    @Test
+    void blockRoundTripsRepetitiveData() throws IOException {
+        for (int length : LENGTHS) assertBlockRoundTrip(repetitive(length));
+    }
+
+    @Test
+    void blockRoundTripsIncompressibleData() throws IOException {
+        for (int length : LENGTHS) assertBlockRoundTrip(random(length, length));
+    }
+
+    @Test
+    void blockRoundTripsLongRuns() throws IOException {
+        // overlapping matches and match lengths needing several extra length bytes
+        for (int length : LENGTHS) assertBlockRoundTrip(new byte[length]);
+    }
+
+    @Test
+    void blockCompressesRepetitiveData() {
+        byte[] data = repetitive(BLOCK);
+        byte[] compressed = new byte[Lz4Block.maxCompressedLength(data.length)];
+        assertTrue(Lz4Block.compress(data, data.length, compressed) < data.length / 2);
+    }
+
+    @Test
+    void blockRejectsTruncatedInput() {
+        byte[] data = repetitive(BLOCK);
+        byte[] compressed = new byte[Lz4Block.maxCompressedLength(data.length)];
+        int length = Lz4Block.compress(data, data.length, compressed);
+        assertThrows(IOException.class, () -> Lz4Block.decompress(compressed, length / 2, new byte[data.length], data.length));
+    }
+
+    @Test
+    void streamRoundTripsRepetitiveData() throws IOException {
+        for (int length : LENGTHS) assertStreamRoundTrip(repetitive(length));
+    }
+
+    @Test
+    void streamRoundTripsIncompressibleData() throws IOException {
+        for (int length : LENGTHS) assertStreamRoundTrip(random(length, length));
+    }
+
+    @Test
+    void streamStoresIncompressibleBlocksUncompressed() throws IOException {
+        byte[] data = random(BLOCK, 0);
+        // [rawLength][storedLength][data] + end marker
+        assertEquals(4 + 4 + BLOCK + 4, compressStream(data).length);
+    }
+
+    @Test
+    void streamRoundTripsSingleByteWrites() throws IOException {
+        byte[] data = repetitive(BLOCK + 100);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Lz4BlockOutputStream out = new Lz4BlockOutputStream(bytes)) {
+            for (byte b : data) out.write(b);
+        }
+
+        try (Lz4BlockInputStream in = new Lz4BlockInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (int i = 0; i < data.length; i++)
+                assertEquals(data[i] & 0xFF, in.read(), "byte " + i);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void streamRejectsTruncatedInput() throws IOException {
+        byte[] compressed = compressStream(repetitive(BLOCK));
+        byte[] truncated = new byte[compressed.length - 10];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> readAll(new Lz4BlockInputStream(new ByteArrayInputStream(truncated))));
+    }
+
+    private static void assertBlockRoundTrip(byte[] data) throws IOException {
+        byte[] compressed = new byte[Lz4Block.maxCompressedLength(data.length)];
+        int length = Lz4Block.compress(data, data.length, compressed);
+        assertTrue(length <= compressed.length);
+
+        byte[] decompressed = new byte[data.length];
+        Lz4Block.decompress(compressed, length, decompressed, data.length);
+        assertArrayEquals(data, decompressed, "length " + data.length);
+    }
+
+    private static void assertStreamRoundTrip(byte[] data) throws IOException {
+        byte[] compressed = compressStream(data);
+        try (Lz4BlockInputStream in = new Lz4BlockInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, readAll(in), "length " + data.length);
+        }
+    }
+
+    private static byte[] compressStream(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Lz4BlockOutputStream out = new Lz4BlockOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    // text-like data with plenty of matches at varying offsets
+    private static byte[] repetitive(int length) {
+        byte[] words = "minecraft:chest minecraft:barrel minecraft:shulker_box Count:64b id:".getBytes();
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0, offset = 0; i < length; i++) {
+            if (random.nextInt(64) == 0) offset = random.nextInt(words.length);
+            data[i] = words[(i + offset) % words.length];
+        }
+        return data;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}